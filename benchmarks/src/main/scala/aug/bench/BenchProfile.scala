@@ -0,0 +1,27 @@
+package aug.bench
+
+import aug.gui.text.{HeadlessConsole, TextBuffer}
+import aug.io.HeadlessSystemLog
+import aug.profile._
+import aug.script.framework.WindowReference
+
+/**
+  * <p>A headless profile that's never started: events are handed to onEvent instead of being queued for a
+  * profile thread, so a benchmark measures only the code that offers them.  The build runs benchmarks with
+  * user.home under target, so its files never reach the developer's config.</p>
+  */
+class BenchProfile(profileConfig: ProfileConfig, onEvent: ProfileEvent => Unit)
+  extends Profile(profileConfig, new HeadlessSystemLog) {
+
+  override def offer(event: ProfileEvent): Unit = onEvent(event)
+
+  override protected def newConsole(): ProfileConsole = new HeadlessConsole(this.profileConfig, this)
+  override protected def newTextWindow(name: String): ProfileWindow = new TextBuffer(this.profileConfig)
+  override protected def layoutWindows(windowReference: WindowReference): Unit = {}
+  override protected def closed(): Unit = {}
+
+  override def close(): Unit = {
+    console.close()
+    metrics.close()
+  }
+}
@@ -0,0 +1,32 @@
+package aug.bench
+
+import org.openjdk.jmh.profile.GCProfiler
+import org.openjdk.jmh.results.format.ResultFormatType
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.OptionsBuilder
+
+/**
+  * <p>Runs the benchmarks matching a regex, all of them by default, with the GC profiler so every result comes
+  * with its allocation rate per operation, and writes the results as JSON for comparing branches:</p>
+  *
+  * <pre>
+  * sbt "benchmarks/jmh:runMain aug.bench.BenchmarkRunner .*Text.* master.json"
+  * </pre>
+  *
+  * <p>Plain sbt "benchmarks/jmh:run -prof gc" works too.</p>
+  */
+object BenchmarkRunner {
+  def main(args: Array[String]): Unit = {
+    val include = args.headOption.getOrElse(".*")
+    val result = args.lift(1).getOrElse("jmh-result.json")
+
+    val options = new OptionsBuilder()
+      .include(include)
+      .addProfiler(classOf[GCProfiler])
+      .resultFormat(ResultFormatType.JSON)
+      .result(result)
+      .build()
+
+    new Runner(options).run()
+  }
+}
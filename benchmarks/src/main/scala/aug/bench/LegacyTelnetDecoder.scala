@@ -0,0 +1,193 @@
+package aug.bench
+
+import java.nio.ByteBuffer
+import java.util.zip.Inflater
+
+import aug.io._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>The byte-at-a-time telnet decoder that {@link TelnetDecoder} replaced, kept only as a baseline for
+  * {@link TelnetDecoderBenchmark}.  The logic is the old Telnet state machine with the profile swapped for a
+  * blackhole, including the copy the old read loop made of every packet.</p>
+  */
+class LegacyTelnetDecoder(bh: Blackhole) {
+
+  private sealed trait State
+  private case object Stream extends State
+  private case object Command extends State
+  private case object Option extends State
+  private case object SubNegotiation extends State
+
+  private val telnetCommands : Map[Byte,TelnetCommand] = Map(
+    TelnetEOR.code -> TelnetEOR,
+    TelnetEsc.code -> TelnetEsc,
+    TelnetSE.code -> TelnetSE,
+    TelnetGA.code -> TelnetGA,
+    TelnetSB.code -> TelnetSB,
+    TelnetWill.code -> TelnetWill,
+    TelnetWont.code -> TelnetWont,
+    TelnetDo.code -> TelnetDo,
+    TelnetDont.code -> TelnetDont,
+    TelnetIac.code -> TelnetIac)
+
+  private val options : Map[Byte, TelnetOption] = Map(
+    OptionEcho.code -> OptionEcho,
+    OptionType.code -> OptionType,
+    OptionWinSize.code -> OptionWinSize,
+    OptionMccp1.code -> OptionMccp1,
+    OptionMccp2.code -> OptionMccp2,
+    OptionAard102.code -> OptionAard102,
+    OptionAtcp.code -> OptionAtcp,
+    OptionGmcp.code -> OptionGmcp
+  )
+
+  private val inflater = new Inflater()
+  private val inflateBuffer = ByteBuffer.allocate(1<<16)
+  private val postBuffer: ByteBuffer = ByteBuffer.allocate(1<<16)
+
+  private var compressed = false
+  private var state : State = Stream
+  private var command : TelnetCommand = TelnetUnknown(0)
+  private var option : TelnetOption = OptionUnknown(0)
+  private var subMessage = new StringBuilder
+  private var zipinput : Array[Byte] = _
+  private var rawBuffer = ByteBuffer.allocate(1<<16)
+
+  def read(in: ByteBuffer): Unit = {
+    val copy = new Array[Byte](in.limit)
+    System.arraycopy(in.array(), 0, copy, 0, copy.length)
+    handleIncoming(copy)
+  }
+
+  private def handleIncoming(bytes: Array[Byte]): Unit = {
+    inflate(bytes)
+    handleIncomingLoop()
+    post()
+  }
+
+  private def handleByte(c: Byte): Unit = {
+    val v : Byte = (0x00FF & c).toByte
+
+    if (!postBuffer.hasRemaining) post()
+
+    state match {
+      case Stream =>
+        if(TelnetIac.code == v) {
+          state = Command
+        } else if('\r' != c) postBuffer.put(c)
+
+      case Command =>
+        command = telnetCommands.getOrElse(v, TelnetUnknown(v))
+
+        command match {
+          case TelnetSE =>
+            state = Stream
+            handleSubNegotiation()
+
+          case TelnetDo | TelnetDont | TelnetWill | TelnetWont | TelnetSB =>
+            state = Option
+
+          case TelnetUnknown(_) =>
+            bh.consume(v)
+
+          case TelnetGA =>
+            post(true)
+            state = Stream
+
+          case all =>
+            state = Stream
+        }
+
+      case Option =>
+        option = options.getOrElse(v, OptionUnknown(v))
+        command match {
+          case TelnetSB => state = SubNegotiation
+          case _ =>
+            bh.consume(option)
+            state = Stream
+        }
+
+      case SubNegotiation =>
+        if(TelnetIac.code == v) {
+          state = Command
+        } else subMessage.append(c.toChar)
+    }
+  }
+
+  private def handleIncomingLoop(): Unit = {
+    while(true) {
+      while(rawBuffer.hasRemaining) {
+        handleByte(rawBuffer.get)
+      }
+
+      if(!compressed || inflater.needsInput) {
+        return
+      }
+
+      readRaw()
+    }
+  }
+
+  private def handleSubNegotiation(): Unit = {
+    val sm = subMessage.toString
+    subMessage = new StringBuilder
+
+    option match {
+      case OptionMccp2 => startCompression()
+      case _ => bh.consume(sm)
+    }
+  }
+
+  private def inflate(bytes: Array[Byte]): Unit = {
+    if (!compressed) {
+      rawBuffer = ByteBuffer.wrap(bytes)
+    } else {
+      zipinput = concatenate(zipinput,bytes)
+      readRaw()
+    }
+  }
+
+  private def post(withGA: Boolean = false): Unit = {
+    if (postBuffer.position() == 0 && !withGA) return
+
+    bh.consume(new String(postBuffer.array, 0, postBuffer.position()))
+    postBuffer.position(0)
+  }
+
+  private def readRaw(): Unit = {
+    inflater.setInput(zipinput)
+
+    if(inflater.needsInput) return
+
+    inflateBuffer.clear()
+
+    val read = inflater.inflate(inflateBuffer.array)
+    inflateBuffer.limit(read)
+    rawBuffer = inflateBuffer.slice
+
+    val remaining = inflater.getRemaining
+    zipinput = right(zipinput,remaining)
+  }
+
+  private def startCompression() : Unit = {
+    compressed = true
+    zipinput = new Array[Byte](rawBuffer.remaining)
+    System.arraycopy(rawBuffer.array, rawBuffer.position, zipinput, 0, zipinput.length)
+    rawBuffer = ByteBuffer.allocate(0)
+    readRaw()
+  }
+
+  // aug.misc.Util's versions, copied to keep its font scan out of the benchmark
+  private def concatenate(args: Array[Byte]*) : Array[Byte] = {
+    val bb = ByteBuffer.allocate(args.map(_.length).sum)
+    for(b <- args) bb.put(b)
+    bb.array
+  }
+
+  private def right(bytes: Array[Byte], length: Int): Array[Byte] = {
+    val bb = ByteBuffer.allocate(length)
+    bb.put(bytes,0,length)
+    bb.array()
+  }
+}
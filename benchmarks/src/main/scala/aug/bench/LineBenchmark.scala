@@ -0,0 +1,47 @@
+package aug.bench
+
+import java.util.concurrent.TimeUnit
+
+import aug.gui.text.{Line, Text, TextPos}
+import aug.profile.ProfileConfig
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>What's done to every visible line on every paint: merging echoed commands, splitting at the wrap width and
+  * highlighting a selection.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class LineBenchmark {
+
+  @Param(Array("2000"))
+  var lines: Int = _
+
+  private val config = ProfileConfig("benchmark")
+  private var parsed: Array[Line] = _
+
+  @Setup
+  def setup(): Unit = {
+    val strings = MudTraffic.lines(lines)
+    val text = new Text(config)
+    strings.indices.foreach(i => text.setLine(i, strings(i)))
+    strings.indices.by(5).foreach(i => text.addCommand(i, "cast 'magic missile' goblin"))
+    parsed = strings.indices.map(text(_)).toArray
+  }
+
+  @Benchmark
+  def mergeCommands(bh: Blackhole): Unit = parsed.foreach(line => bh.consume(line.mergeCommands(config)))
+
+  @Benchmark
+  def split(bh: Blackhole): Unit = parsed.foreach(line => bh.consume(line.split(40)))
+
+  @Benchmark
+  def highlight(bh: Blackhole): Unit = parsed.foreach { line =>
+    bh.consume(line.highlight(TextPos(line.lineNum, 5), TextPos(line.lineNum, 30)))
+  }
+}
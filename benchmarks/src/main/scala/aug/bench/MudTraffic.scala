@@ -0,0 +1,158 @@
+package aug.bench
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.zip.Deflater
+
+import aug.io.{TelnetDecoder, TelnetHandler}
+
+import scala.util.Random
+
+/**
+  * <p>Generates telnet traffic shaped like a busy session on a GMCP-heavy mud: colored combat spam, prompts ending
+  * in IAC GA, char.vitals after every prompt and the occasional room.info and comm.channel message.  The output is
+  * deterministic for a given seed so branches can be compared against each other.</p>
+  */
+object MudTraffic {
+  private val IAC = 255
+  private val SB = 250
+  private val SE = 240
+  private val GA = 249
+  private val MCCP2 = 86
+  private val GMCP = 201
+
+  private val mobs = Array("a goblin warrior", "the cave troll", "a rabid wolf", "Grimbold the Smith",
+    "an animated skeleton", "a swarm of bats", "the high priestess of Shar")
+  private val verbs = Array("scratches", "bruises", "hits", "injures", "wounds", "mauls", "decimates",
+    "devastates", "maims", "MUTILATES", "DISEMBOWELS", "*** DEMOLISHES ***", "=== OBLITERATES ===")
+  private val attacks = Array("slash", "pierce", "bite", "claw", "crush", "smite")
+  private val words = Array("the", "a", "you", "north", "gold", "quest", "group", "spell", "anyone", "selling",
+    "sanctuary", "potion", "level", "tank", "heal", "where", "is", "recall", "portal", "armor")
+
+  def color(codes: Int*): String = "\u001b[" + codes.mkString(";") + "m"
+
+  /**
+    * <p>A plain (uncompressed) telnet stream with roughly the given number of lines.</p>
+    */
+  def session(lines: Int, seed: Long = 42): Array[Byte] = {
+    val random = new Random(seed)
+    val out = new ByteArrayOutputStream(lines * 80)
+
+    def text(s: String): Unit = out.write(s.getBytes(StandardCharsets.UTF_8))
+    def line(s: String): Unit = text(s + "\r\n")
+    def pick(a: Array[String]): String = a(random.nextInt(a.length))
+
+    def gmcp(msg: String): Unit = {
+      out.write(Array(IAC, SB, GMCP).map(_.toByte))
+      text(msg)
+      out.write(Array(IAC, SE).map(_.toByte))
+    }
+
+    def chatter(n: Int): String = (1 to n).map(_ => pick(words)).mkString(" ")
+
+    var written = 0
+    var round = 0
+    var hp = 1500
+
+    while (written < lines) {
+      val attacksThisRound = 3 + random.nextInt(6)
+
+      for (_ <- 1 to attacksThisRound) {
+        val dmg = random.nextInt(400)
+        if (random.nextBoolean()) {
+          line(s"${color(0, 32)}Your ${pick(attacks)} ${color(1, 33)}${pick(verbs)}${color(0, 32)} ${pick(mobs)}! " +
+            s"${color(0, 37)}[$dmg]${color(0)}")
+        } else {
+          hp = Math.max(1, hp - dmg / 4)
+          line(s"${color(0, 31)}${pick(mobs).capitalize}'s ${pick(attacks)} ${color(1, 31)}${pick(verbs)}" +
+            s"${color(0, 31)} you! ${color(0, 37)}[${dmg / 4}]${color(0)}")
+        }
+      }
+
+      text(s"${color(0, 36)}[${color(1, 32)}$hp${color(0, 36)}/1500hp ${color(1, 34)}${random.nextInt(900)}" +
+        s"${color(0, 36)}/900mn 700/700mv]${color(0)} > ")
+      out.write(Array(IAC, GA).map(_.toByte))
+      gmcp(s"""char.vitals { "hp": "$hp", "maxhp": "1500", "mana": "${random.nextInt(900)}", "maxmana": "900", """ +
+        s""""moves": "700", "maxmoves": "700" }""")
+
+      if (round % 10 == 0) {
+        line("")
+        line(s"${color(1, 36)}The Grand Bazaar of Aylor${color(0)}")
+        for (_ <- 1 to 4) line(chatter(14))
+        line(s"${color(0, 32)}[ Exits: north east south west up ]${color(0)}")
+        gmcp(s"""room.info { "num": ${random.nextInt(40000)}, "name": "The Grand Bazaar of Aylor", """ +
+          s""""zone": "aylor", "terrain": "city", "details": "", "exits": { "n": 32419, "e": 32420, "s": 32421, """ +
+          s""""w": 32422, "u": 32500 }, "coord": { "id": 0, "x": ${random.nextInt(60)}, "y": """ +
+          s"""${random.nextInt(60)}, "cont": 0 } }""")
+        gmcp(s"""comm.channel { "chan": "gossip", "msg": "${color(1, 35)}Someone gossips '${chatter(20)}'${color(0)}", """ +
+          s""""player": "Someone" }""")
+        written += 7
+      }
+
+      written += attacksThisRound + 1
+      round += 1
+    }
+
+    out.toByteArray
+  }
+
+  /**
+    * <p>The text of a session as the console sees it: lines with their ANSI colors, without telnet commands or
+    * line endings.</p>
+    */
+  def lines(lines: Int, seed: Long = 42): Array[String] = {
+    val text = new ByteArrayOutputStream(lines * 80)
+
+    new TelnetDecoder(new TelnetHandler {
+      override def onText(buffer: ByteBuffer): Unit = while (buffer.hasRemaining) text.write(buffer.get())
+      override def onGoAhead(): Unit = text.write('\n')
+      override def onNegotiation(command: Byte, option: Byte): Unit = {}
+      override def onSubNegotiation(option: Byte, payload: Array[Byte], length: Int): Unit = {}
+      override def onUnknownCommand(command: Byte): Unit = {}
+    }).decode(ByteBuffer.wrap(session(lines, seed)))
+
+    new String(text.toByteArray, StandardCharsets.UTF_8).replace("\r", "").split("\n")
+  }
+
+  /**
+    * <p>Split a stream into packets of the sizes typically read off a socket during spam.</p>
+    */
+  def packets(stream: Array[Byte], seed: Long = 42): Array[Array[Byte]] = {
+    val random = new Random(seed)
+    val packets = Array.newBuilder[Array[Byte]]
+    var pos = 0
+
+    while (pos < stream.length) {
+      val length = Math.min(stream.length - pos, 256 + random.nextInt(4096))
+      packets += java.util.Arrays.copyOfRange(stream, pos, pos + length)
+      pos += length
+    }
+
+    packets.result()
+  }
+
+  /**
+    * <p>The same packets as a server with MCCP v2 would send them: the compression start subnegotiation, then each
+    * packet deflated and sync flushed.</p>
+    */
+  def compress(packets: Array[Array[Byte]]): Array[Array[Byte]] = {
+    val deflater = new Deflater(Deflater.DEFAULT_COMPRESSION)
+    val buffer = new Array[Byte](1 << 16)
+
+    val compressed = packets.map { packet =>
+      deflater.setInput(packet)
+      val out = new ByteArrayOutputStream()
+      var n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)
+      while (n > 0) {
+        out.write(buffer, 0, n)
+        n = if (n == buffer.length) deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH) else 0
+      }
+      out.toByteArray
+    }
+
+    deflater.end()
+
+    Array(IAC, SB, MCCP2, IAC, SE).map(_.toByte) +: compressed
+  }
+}
@@ -0,0 +1,43 @@
+package aug.bench
+
+import java.util.concurrent.TimeUnit
+
+import aug.script.framework.tools.ScalaUtils
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>The string helpers clients call on every line: stripping colors, and encoding and decoding the lists
+  * clients and the scheduler save state with.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class ScalaUtilsBenchmark {
+
+  @Param(Array("2000"))
+  var lines: Int = _
+
+  private var strings: Array[String] = _
+  private var lists: Array[List[String]] = _
+  private var encoded: Array[String] = _
+
+  @Setup
+  def setup(): Unit = {
+    strings = MudTraffic.lines(lines)
+    lists = strings.grouped(8).map(_.toList).toArray
+    encoded = lists.map(ScalaUtils.encodeList)
+  }
+
+  @Benchmark
+  def removeColors(bh: Blackhole): Unit = strings.foreach(s => bh.consume(ScalaUtils.removeColors(s)))
+
+  @Benchmark
+  def encodeList(bh: Blackhole): Unit = lists.foreach(l => bh.consume(ScalaUtils.encodeList(l)))
+
+  @Benchmark
+  def decodeList(bh: Blackhole): Unit = encoded.foreach(s => bh.consume(ScalaUtils.decodeList(s)))
+}
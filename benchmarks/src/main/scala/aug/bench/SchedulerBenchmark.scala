@@ -0,0 +1,85 @@
+package aug.bench
+
+import java.util.concurrent.TimeUnit
+
+import aug.profile.ProfileConfig
+import aug.script.Scheduler
+import aug.script.framework.RunnableReloader
+import aug.script.framework.tools.ScalaUtils
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+import scala.util.Random
+
+/**
+  * <p>A timer a client would save across reloads, like a buff wearing off.</p>
+  */
+class BuffTimer(val buff: String, val target: String) extends Runnable {
+  override def run(): Unit = {}
+}
+
+object BuffTimerReloader extends RunnableReloader[BuffTimer] {
+  override def runnableType(): Class[BuffTimer] = classOf[BuffTimer]
+  override def runnableToString(timer: BuffTimer): String = ScalaUtils.encodeArgs(timer.buff, timer.target)
+  override def stringToRunnable(string: String): Runnable = {
+    val args = ScalaUtils.decodeList(string)
+    new BuffTimer(args.head, args(1))
+  }
+}
+
+/**
+  * <p>Scheduler throughput for a client with many timers: scheduling a batch of one shot and periodic events with
+  * delays up to a minute, as buff and tick timers would be, then cancelling them, and saving the pending events,
+  * which serializes each through its reloader.  Nothing comes due during an operation.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class SchedulerBenchmark {
+
+  @Param(Array("10000"))
+  var events: Int = _
+
+  private var profile: BenchProfile = _
+  private var scheduler: Scheduler = _
+  private var delays: Array[Long] = _
+  private var timers: Array[BuffTimer] = _
+  private val runnable: Runnable = () => {}
+
+  @Setup
+  def setup(bh: Blackhole): Unit = {
+    profile = new BenchProfile(ProfileConfig("benchmark"), bh.consume(_))
+    scheduler = new Scheduler(null, profile, Seq(BuffTimerReloader))
+    val random = new Random(42)
+    delays = Array.fill(events)(1000L + random.nextInt(60000))
+    timers = Array.tabulate(events)(i => new BuffTimer(s"buff $i", s"target ${i % 50}"))
+
+    val scheduled = timers.map(scheduler.in(60000, _))
+    require(scheduler.save.size == events, "every timer should be saved")
+    scheduled.foreach(_.cancel())
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    scheduler.close()
+    profile.close()
+  }
+
+  @Benchmark
+  def scheduleAndCancel(): Unit = {
+    val scheduled = delays.indices.map { i =>
+      if (i % 10 == 0) scheduler.every(delays(i), delays(i), runnable) else scheduler.in(delays(i), runnable)
+    }
+    scheduled.foreach(_.cancel())
+  }
+
+  @Benchmark
+  def save(bh: Blackhole): Unit = {
+    val scheduled = delays.indices.map(i => scheduler.in(delays(i), timers(i)))
+    bh.consume(scheduler.save)
+    scheduled.foreach(_.cancel())
+  }
+}
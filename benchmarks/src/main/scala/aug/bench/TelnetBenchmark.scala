@@ -0,0 +1,57 @@
+package aug.bench
+
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+import aug.io.Telnet
+import aug.profile.{ProfileConfig, TelnetConfig}
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>Telnet.handleIncoming on a whole generated session per operation, packet by packet as read off the socket:
+  * telnet decoding, MCCP inflating, charset decoding and the events offered to the profile, which are consumed
+  * rather than handled.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class TelnetBenchmark {
+
+  @Param(Array("plain", "mccp"))
+  var traffic: String = _
+
+  @Param(Array("20000"))
+  var lines: Int = _
+
+  private var packets: Array[ByteBuffer] = _
+  private var bh: Blackhole = _
+  private var profile: BenchProfile = _
+  private val config = ProfileConfig("benchmark", telnetConfig = TelnetConfig(host = "localhost"))
+
+  @Setup
+  def setup(blackhole: Blackhole): Unit = {
+    bh = blackhole
+    profile = new BenchProfile(config, bh.consume(_))
+    val plain = MudTraffic.packets(MudTraffic.session(lines))
+    packets = (if (traffic == "mccp") MudTraffic.compress(plain) else plain).map(ByteBuffer.wrap)
+  }
+
+  @TearDown
+  def tearDown(): Unit = profile.close()
+
+  @Benchmark
+  def handleIncoming(): Unit = {
+    val telnet = new Telnet(profile, config)
+
+    packets.foreach { packet =>
+      packet.rewind()
+      telnet.handleIncoming(packet)
+    }
+
+    telnet.close()
+  }
+}
@@ -0,0 +1,91 @@
+package aug.bench
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.TimeUnit
+
+import aug.io.{TelnetDecoder, TelnetHandler}
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>Handler that does what Telnet does with decoded bytes: copy text into a post buffer, turn it into a string at
+  * the end of each packet or on GA, and turn subnegotiations into strings.</p>
+  */
+class PostingHandler(bh: Blackhole) extends TelnetHandler {
+  private val postBuffer = ByteBuffer.allocate(1<<16)
+
+  override def onText(text: ByteBuffer): Unit = {
+    val limit = text.limit()
+
+    while (text.hasRemaining) {
+      if (!postBuffer.hasRemaining) post()
+      text.limit(text.position() + Math.min(text.remaining, postBuffer.remaining))
+      postBuffer.put(text)
+      text.limit(limit)
+    }
+  }
+
+  override def onGoAhead(): Unit = post(true)
+  override def onNegotiation(command: Byte, option: Byte): Unit = bh.consume(option)
+  override def onSubNegotiation(option: Byte, payload: Array[Byte], length: Int): Unit = {
+    bh.consume(new String(payload, 0, length, StandardCharsets.UTF_8))
+  }
+  override def onUnknownCommand(command: Byte): Unit = bh.consume(command)
+
+  def post(withGA: Boolean = false): Unit = {
+    if (postBuffer.position() == 0 && !withGA) return
+
+    bh.consume(new String(postBuffer.array, 0, postBuffer.position()))
+    postBuffer.position(0)
+  }
+}
+
+/**
+  * <p>Decodes a whole generated session per operation, packet by packet, with the table driven decoder and with the
+  * old byte-at-a-time decoder.  Run with -prof gc to compare allocation rates.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class TelnetDecoderBenchmark {
+
+  @Param(Array("plain", "mccp"))
+  var traffic: String = _
+
+  @Param(Array("20000"))
+  var lines: Int = _
+
+  private var packets: Array[ByteBuffer] = _
+
+  @Setup
+  def setup(): Unit = {
+    val plain = MudTraffic.packets(MudTraffic.session(lines))
+    packets = (if (traffic == "mccp") MudTraffic.compress(plain) else plain).map(ByteBuffer.wrap)
+  }
+
+  @Benchmark
+  def tableDriven(bh: Blackhole): Unit = {
+    val handler = new PostingHandler(bh)
+    val decoder = new TelnetDecoder(handler)
+
+    packets.foreach { packet =>
+      packet.rewind()
+      decoder.decode(packet)
+      handler.post()
+    }
+  }
+
+  @Benchmark
+  def legacy(bh: Blackhole): Unit = {
+    val decoder = new LegacyTelnetDecoder(bh)
+
+    packets.foreach { packet =>
+      packet.rewind()
+      decoder.read(packet)
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package aug.bench
+
+import java.util.concurrent.TimeUnit
+
+import aug.gui.text.Text
+import aug.profile.ProfileConfig
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * <p>The console's text: parsing ANSI colored lines into the scrollback, and wrapping them for painting, both
+  * scrolling through at one width, mostly from the wrap cache, and at a width that changes every screen, as while
+  * resizing.</p>
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+class TextBenchmark {
+
+  @Param(Array("20000"))
+  var lines: Int = _
+
+  private val ScreenLines = 50
+
+  private var strings: Array[String] = _
+  private var text: Text = _
+
+  @Setup
+  def setup(): Unit = {
+    strings = MudTraffic.lines(lines)
+    text = new Text(ProfileConfig("benchmark"))
+    strings.indices.foreach(i => text.setLine(i, strings(i)))
+    strings.indices.by(5).foreach(i => text.addCommand(i, "kill goblin"))
+  }
+
+  @Benchmark
+  def setLine(): Unit = {
+    val fresh = new Text(ProfileConfig("benchmark"))
+    strings.indices.foreach(i => fresh.setLine(i, strings(i)))
+  }
+
+  @Benchmark
+  def getWrapLinesScrolling(bh: Blackhole): Unit = {
+    var bot = text.length
+    while (bot > ScreenLines) {
+      bh.consume(text.getWrapLines(ScreenLines, 100, bot))
+      bot -= ScreenLines
+    }
+  }
+
+  @Benchmark
+  def getWrapLinesResizing(bh: Blackhole): Unit = {
+    var bot = text.length
+    var wrapAt = 60
+    while (bot > ScreenLines) {
+      bh.consume(text.getWrapLines(ScreenLines, wrapAt, bot))
+      bot -= ScreenLines
+      wrapAt = if (wrapAt == 140) 60 else wrapAt + 1
+    }
+  }
+}
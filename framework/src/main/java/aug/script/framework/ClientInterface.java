@@ -104,6 +104,25 @@ public interface ClientInterface {
      */
     boolean handleLine(LineEvent lineEvent);
 
+    /**
+     * <p>Handle every complete line from one read of the server in a single call.  The lines are in order and
+     * follow the same rules as {@link ClientInterface#handleLine(LineEvent)}.  This saves a round trip to the client
+     * thread per line, which adds up when the server sends a lot of lines at once.</p>
+     *
+     * <p>The returned array holds, for each line at the same index, whether to keep it off the console.  A null or
+     * short array means the remaining lines are printed.</p>
+     *
+     * <p>The default implementation calls handleLine for each line, so clients only need to override this if they
+     * can do something smarter with a batch.</p>
+     */
+    default boolean[] handleLines(LineEvent[] lineEvents) {
+        boolean[] swallowed = new boolean[lineEvents.length];
+        for (int i = 0; i < lineEvents.length; i++) {
+            swallowed[i] = handleLine(lineEvents[i]);
+        }
+        return swallowed;
+    }
+
     /**
      * <p>Handle a fragment from the server.  Fragments are text sent by the server when the application has read all
      * it can out of the OS buffer and has yet to see the server send a newline.  Empty lines will not be sent as
@@ -137,6 +156,17 @@ public interface ClientInterface {
      */
     void handleGmcp(String gmcp);
 
+    /**
+     * <p>Handle a GMCP message sent by the server, already split into package name and data.  Only messages in
+     * packages the client subscribed to with {@link ProfileInterface#subscribeGmcp(String)} are delivered, or
+     * every message if the client hasn't subscribed to anything.</p>
+     *
+     * <p>By default this passes the whole message to {@link ClientInterface#handleGmcp(String)}.</p>
+     */
+    default void handleGmcpMessage(GmcpMessage message) {
+        handleGmcp(message.toString());
+    }
+
     /**
      * <p>Handle user input sent from the command line interface.  This cmd may include \n but
      * generally will not.</p>
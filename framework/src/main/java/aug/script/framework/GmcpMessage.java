@@ -0,0 +1,44 @@
+package aug.script.framework;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>A GMCP message split into its package name, like char.vitals, and its data, usually JSON.  The data is kept
+ * as the bytes the server sent and only decoded when first asked for, so messages nobody reads are never turned
+ * into strings.</p>
+ */
+@SuppressWarnings("all")
+public final class GmcpMessage {
+    public final String packageName;
+    private final byte[] data;
+    private String decoded;
+
+    /**
+     * <p>The data array is owned by the message and must not be changed afterwards.</p>
+     */
+    public GmcpMessage(String packageName, byte[] data) {
+        if (packageName == null) throw new RuntimeException("package name cannot be null");
+        this.packageName = packageName;
+        this.data = data == null ? new byte[0] : data;
+    }
+
+    /**
+     * <p>The data following the package name, or an empty string if there was none.  Decoded on first use.</p>
+     */
+    public String getData() {
+        String s = decoded;
+        if (s == null) {
+            s = new String(data, StandardCharsets.UTF_8);
+            decoded = s;
+        }
+        return s;
+    }
+
+    /**
+     * <p>The message as the server sent it, package name and data separated by a space.</p>
+     */
+    @Override
+    public String toString() {
+        return data.length == 0 ? packageName : packageName + " " + getData();
+    }
+}
@@ -9,13 +9,28 @@ public class LineEvent {
     public final long lineNum;
 
     public LineEvent(long lineNum, String raw) {
+        this(lineNum, raw, null);
+    }
+
+    /**
+     * <p>Create a line event whose colors were already removed, typically by the same parse that put the line on the
+     * console, so they aren't removed a second time.  If withoutColors is null it is computed from raw.</p>
+     */
+    public LineEvent(long lineNum, String raw, String withoutColors) {
         this.lineNum = lineNum;
         this.raw = raw;
-        this.withoutColors = ScalaUtils.removeColors(raw);
+        this.withoutColors = withoutColors != null ? withoutColors : ScalaUtils.removeColors(raw);
+    }
+
+    /**
+     * <p>The line with all color codes removed, the same as the withoutColors field.</p>
+     */
+    public String withoutColors() {
+        return withoutColors;
     }
 
     @Override
     public String toString() {
-        return "[" + lineNum + ", " + withoutColors + "]";
+        return "[" + lineNum + ", " + withoutColors() + "]";
     }
 }
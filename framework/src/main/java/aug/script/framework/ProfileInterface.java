@@ -3,6 +3,7 @@ package aug.script.framework;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>This is the set of methods that the client can call against the profile.  An implementation
@@ -36,6 +37,22 @@ public interface ProfileInterface {
      */
     void sendSilently(String string);
 
+    /**
+     * <p>Send every command waiting in the send queue now, ignoring the pace.  Commands only queue when the
+     * profile paces sends, so a long speedwalk doesn't trip the server's spam limit.</p>
+     *
+     * <p>This generates a high-priority event.</p>
+     */
+    void flushSendQueue();
+
+    /**
+     * <p>Drop every command waiting in the send queue, like when a speedwalk should stop.  The queue is also
+     * cleared on disconnect.</p>
+     *
+     * <p>This generates a high-priority event.</p>
+     */
+    void clearSendQueue();
+
     /**
      * <p>Set the window layout.</p>
      *
@@ -161,4 +178,43 @@ public interface ProfileInterface {
      * the reloaders param is ignored.</p>
      */
     SchedulerInterface getScheduler(RunnableReloader<? extends Runnable> [] reloaders);
+
+    /**
+     * <p>Deliver GMCP messages whose package is the prefix or lies below it, so "char" covers char.vitals and
+     * char.status; a trailing dot, as in "char.", is ignored.  Package names are not case sensitive.  Until the
+     * client subscribes to something every message is delivered; after that, messages in other packages only update
+     * the cache read by
+     * {@link ProfileInterface#getGmcp(String)} and never reach the client thread.</p>
+     *
+     * <p>Subscriptions are dropped when the client stops.</p>
+     */
+    void subscribeGmcp(String packagePrefix);
+
+    /**
+     * <p>Remove a subscription made with {@link ProfileInterface#subscribeGmcp(String)}.</p>
+     */
+    void unsubscribeGmcp(String packagePrefix);
+
+    /**
+     * <p>The latest GMCP message received in the package, subscribed or not, or null if none was received.</p>
+     *
+     * <p>This reads a cache and does not create an event.</p>
+     */
+    GmcpMessage getGmcp(String packageName);
+
+    /**
+     * <p>The number of events waiting for the event thread, by lane: close, control, client and data.  A growing
+     * data lane means the profile, or the client, can't keep up with the server.</p>
+     */
+    Map<String, Integer> getEventQueueDepths();
+
+    /**
+     * <p>Runtime metrics of the profile by name: bytes and lines read with their rates per second, the event
+     * queue depth, and for telnet decoding, MCCP inflating, text processing, painting and each client callback
+     * (like client.handleLine) the count, mean, p50, p99 and max time in microseconds.  Watching
+     * client.*.p99Micros shows a slow trigger long before it trips the client timeout.</p>
+     *
+     * <p>The same metrics are available through JMX under aug:type=Profile.</p>
+     */
+    Map<String, Long> getMetrics();
 }
@@ -15,7 +15,7 @@ public class Util {
     public static String matchColor(int ... codes) {
         StringBuilder s = new StringBuilder();
 
-        s.append("" + (byte) 27);
+        s.append((char) 27);
         s.append("[");
 
         for (int code : codes) {
@@ -0,0 +1,122 @@
+package aug.script.framework.trigger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Aho-Corasick automaton over a fixed set of strings.  One pass over a text finds every string that occurs in
+ * it.  Transitions are kept as sorted char arrays per node and searched with a binary search, which keeps the
+ * automaton small for the arbitrary alphabet of mud text.</p>
+ */
+final class AhoCorasick {
+    private final char[][] chars;
+    private final int[][] next;
+    private final int[] fail;
+    private final int[][] output;
+
+    /**
+     * <p>Strings are identified by their index in the list.</p>
+     */
+    AhoCorasick(List<String> strings) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+
+        for (int id = 0; id < strings.size(); id++) {
+            int node = 0;
+            for (char c : strings.get(id).toCharArray()) {
+                Integer child = trie.get(node).get(c);
+                if (child == null) {
+                    child = trie.size();
+                    trie.get(node).put(c, child);
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                }
+                node = child;
+            }
+            ends.get(node).add(id);
+        }
+
+        int size = trie.size();
+        chars = new char[size][];
+        next = new int[size][];
+        fail = new int[size];
+        output = new int[size][];
+
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> children = trie.get(node);
+            chars[node] = new char[children.size()];
+            next[node] = new int[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> child : children.entrySet()) {
+                chars[node][i] = child.getKey();
+                next[node][i] = child.getValue();
+                i++;
+            }
+        }
+
+        // breadth first, so the failure node is always done before the nodes that fail to it
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        output[0] = toArray(ends.get(0));
+
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+
+            for (int i = 0; i < chars[node].length; i++) {
+                int child = next[node][i];
+                char c = chars[node][i];
+
+                int f = fail[node];
+                while (f != 0 && step(f, c) < 0) f = fail[f];
+                int target = step(f, c);
+                fail[child] = node != 0 && target >= 0 ? target : 0;
+
+                int[] own = toArray(ends.get(child));
+                int[] inherited = output[fail[child]];
+                output[child] = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, output[child], own.length, inherited.length);
+
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int step(int node, char c) {
+        int i = Arrays.binarySearch(chars[node], c);
+        return i < 0 ? -1 : next[node][i];
+    }
+
+    /**
+     * <p>Set the bit of every string that occurs in the text.</p>
+     */
+    void scan(CharSequence text, BitSet found) {
+        int node = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int target = step(node, c);
+
+            while (target < 0 && node != 0) {
+                node = fail[node];
+                target = step(node, c);
+            }
+
+            node = target < 0 ? 0 : target;
+
+            for (int id : output[node]) {
+                found.set(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package aug.script.framework.trigger;
+
+/**
+ * <p>Finds a literal substring that every match of a regex must contain, so lines that don't contain it can skip
+ * the regex.  This is conservative: when in doubt, for alternations, inline flags or anything inside a group, no
+ * literal is returned and the regex is run on every line.</p>
+ */
+final class Literals {
+    private Literals() {}
+
+    /**
+     * <p>The longest literal every match contains, or the empty string if none was found.</p>
+     */
+    static String longestRequired(String regex) {
+        if (hasInlineFlags(regex) || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            String literal = null;
+
+            if (c == '\\' && i + 1 < regex.length()) {
+                char d = regex.charAt(i + 1);
+
+                if (d == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    literal = regex.substring(i + 2, end < 0 ? regex.length() : end);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else if (Character.isLetterOrDigit(d)) {
+                    i = skipEscape(regex, i);
+                } else {
+                    literal = String.valueOf(d);
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                i = skipGroup(regex, i);
+            } else if (c == '.' || c == '^' || c == '$') {
+                i++;
+            } else if (isQuantifier(c)) {
+                i = skipQuantifier(regex, i);
+            } else {
+                literal = String.valueOf(c);
+                i++;
+            }
+
+            if (literal == null) {
+                best = longer(best, run);
+                run.setLength(0);
+                continue;
+            }
+
+            if (i < regex.length() && isQuantifier(regex.charAt(i))) {
+                // the quantifier only applies to the last char of the literal
+                boolean required = regex.charAt(i) == '+' || (regex.charAt(i) == '{' && !optionalBraces(regex, i));
+                run.append(literal, 0, literal.length() - (required ? 0 : 1));
+                best = longer(best, run);
+                run.setLength(0);
+                i = skipQuantifier(regex, i);
+            } else {
+                run.append(literal);
+            }
+        }
+
+        return longer(best, run);
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    private static boolean isQuantifier(char c) {
+        return c == '*' || c == '+' || c == '?' || c == '{';
+    }
+
+    private static boolean optionalBraces(String regex, int i) {
+        return i + 1 < regex.length() && regex.charAt(i + 1) == '0';
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+        } else {
+            i++;
+        }
+
+        // lazy and possessive quantifiers
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) i++;
+        return i;
+    }
+
+    private static int skipEscape(String regex, int i) {
+        char d = regex.charAt(i + 1);
+        i += 2;
+
+        switch (d) {
+            case 'x':
+                if (i < regex.length() && regex.charAt(i) == '{') return skipTo(regex, i, '}');
+                return Math.min(regex.length(), i + 2);
+            case 'u':
+                return Math.min(regex.length(), i + 4);
+            case 'c':
+                return Math.min(regex.length(), i + 1);
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i < regex.length() && regex.charAt(i) == '{') return skipTo(regex, i, '}');
+                return Math.min(regex.length(), i + 1);
+            case 'k':
+                return skipTo(regex, i, '>');
+            default:
+                while (Character.isDigit(d) && i < regex.length() && Character.isDigit(regex.charAt(i))) i++;
+                return i;
+        }
+    }
+
+    private static int skipTo(String regex, int i, char close) {
+        int end = regex.indexOf(close, i);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') depth++;
+            if (c == ']' && depth-- == 0) return i + 1;
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(') depth++;
+            if (c == ')' && --depth == 0) return skipGroupQuantifier(regex, i + 1);
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipGroupQuantifier(String regex, int i) {
+        return i < regex.length() && isQuantifier(regex.charAt(i)) ? skipQuantifier(regex, i) : i;
+    }
+
+    private static boolean hasInlineFlags(String regex) {
+        for (int i = 0; i + 2 < regex.length(); i++) {
+            if (regex.charAt(i) == '\\') {
+                i++;
+            } else if (regex.charAt(i) == '(' && regex.charAt(i + 1) == '?') {
+                char c = regex.charAt(i + 2);
+                if (Character.isLetter(c) || c == '-') return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        int i = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else {
+                    i += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(') depth++;
+            if (c == ')') depth--;
+            if (c == '|' && depth == 0) return true;
+            i++;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package aug.script.framework.trigger;
+
+import java.util.regex.Pattern;
+
+/**
+ * <p>A trigger registered with {@link TriggerRegistry}.  Triggers match against {@link
+ * aug.script.framework.LineEvent#withoutColors()} unless they are raw, in which case they match against the colored
+ * text, see {@link aug.script.framework.tools.Util#matchColor(int...)}.</p>
+ */
+@SuppressWarnings("unused")
+public final class Trigger {
+    private final TriggerRegistry registry;
+    private final String regex;
+    private final boolean raw;
+    private final boolean oneShot;
+    private final String actionName;
+
+    final long order;
+    final Pattern pattern;
+    final TriggerAction action;
+    final String literal;
+    boolean active = true;
+
+    Trigger(TriggerRegistry registry, long order, String regex, boolean raw, boolean oneShot, String actionName,
+            TriggerAction action) {
+        this.registry = registry;
+        this.order = order;
+        this.regex = regex;
+        this.raw = raw;
+        this.oneShot = oneShot;
+        this.actionName = actionName;
+        this.action = action;
+        this.pattern = Pattern.compile(regex);
+        this.literal = Literals.longestRequired(regex);
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public boolean isRaw() {
+        return raw;
+    }
+
+    /**
+     * <p>One shot triggers are removed the first time they fire.</p>
+     */
+    public boolean isOneShot() {
+        return oneShot;
+    }
+
+    /**
+     * <p>The name of the registered action, or null if the trigger was added with an action object, in which case
+     * it won't survive a reload.</p>
+     */
+    public String getActionName() {
+        return actionName;
+    }
+
+    /**
+     * <p>False once the trigger was removed or, for one shot triggers, has fired.</p>
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * <p>Remove the trigger.  Returns true iff it was still active.</p>
+     */
+    public boolean cancel() {
+        return registry.remove(this);
+    }
+
+    @Override
+    public String toString() {
+        return "Trigger[" + regex + (raw ? ", raw" : "") + (oneShot ? ", once" : "") + "]";
+    }
+}
@@ -0,0 +1,14 @@
+package aug.script.framework.trigger;
+
+import aug.script.framework.LineEvent;
+
+import java.util.regex.MatchResult;
+
+/**
+ * <p>What a trigger does when its pattern matches a line.  The match result holds the groups of the first match
+ * in the line.</p>
+ */
+@FunctionalInterface
+public interface TriggerAction {
+    void onMatch(LineEvent lineEvent, MatchResult matchResult);
+}
@@ -0,0 +1,224 @@
+package aug.script.framework.trigger;
+
+import aug.script.framework.LineEvent;
+import aug.script.framework.ReloadData;
+import aug.script.framework.tools.ScalaUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * <p>Runs many regex triggers against each line without running every regex on every line.  All registered
+ * patterns are compiled together: each pattern contributes the longest literal its matches must contain, and one
+ * Aho-Corasick pass over the line finds which of those literals occur.  Only triggers whose literal was found, or
+ * that have no usable literal, run their regex.</p>
+ *
+ * <p>Triggers fire in the order they were added, each at most once per line.  Actions may add and remove triggers,
+ * the change applies from the next line on.</p>
+ *
+ * <p><STRONG>Reloading</STRONG></p>
+ *
+ * <p>Actions live in the client's classloader, so only triggers added with the name of an action registered with
+ * {@link TriggerRegistry#registerAction(String, TriggerAction)} can survive a reload.  Call
+ * {@link TriggerRegistry#save(ReloadData)} in {@link aug.script.framework.ClientInterface#shutdown()}, then
+ * register the same action names and call {@link TriggerRegistry#load(ReloadData)} in
+ * {@link aug.script.framework.ClientInterface#init}.</p>
+ *
+ * <p>Not thread safe, this is meant to be used on the client thread.</p>
+ */
+@SuppressWarnings("unused")
+public class TriggerRegistry {
+    private static final String RELOAD_KEY = TriggerRegistry.class.getName();
+
+    private final Map<String, TriggerAction> actions = new HashMap<>();
+    private final Map<Long, Trigger> triggers = new LinkedHashMap<>();
+    private long nextOrder = 0;
+
+    // compiled state, rebuilt on the first line after triggers change
+    private boolean dirty = true;
+    private Trigger[] compiled = new Trigger[0];
+    private int[] literalIds = new int[0];
+    private AhoCorasick plainScanner;
+    private AhoCorasick rawScanner;
+    private final BitSet plainFound = new BitSet();
+    private final BitSet rawFound = new BitSet();
+
+    /**
+     * <p>Name an action so triggers can refer to it by name and be saved across reloads.</p>
+     */
+    public void registerAction(String name, TriggerAction action) {
+        actions.put(name, action);
+    }
+
+    /**
+     * <p>Add a persistent trigger that matches text without colors.</p>
+     */
+    public Trigger add(String regex, TriggerAction action) {
+        return add(regex, false, false, action);
+    }
+
+    /**
+     * <p>Add a persistent trigger that matches text without colors and runs a registered action.</p>
+     */
+    public Trigger add(String regex, String actionName) {
+        return add(regex, false, false, actionName);
+    }
+
+    /**
+     * <p>Add a trigger that is removed after it fires once.</p>
+     */
+    public Trigger once(String regex, TriggerAction action) {
+        return add(regex, false, true, action);
+    }
+
+    /**
+     * <p>Add a trigger, running a registered action, that is removed after it fires once.</p>
+     */
+    public Trigger once(String regex, String actionName) {
+        return add(regex, false, true, actionName);
+    }
+
+    public Trigger add(String regex, boolean raw, boolean oneShot, TriggerAction action) {
+        if (action == null) throw new IllegalArgumentException("action cannot be null");
+        return add(new Trigger(this, nextOrder++, regex, raw, oneShot, null, action));
+    }
+
+    public Trigger add(String regex, boolean raw, boolean oneShot, String actionName) {
+        TriggerAction action = actions.get(actionName);
+        if (action == null) throw new IllegalArgumentException("no action registered with name " + actionName);
+        return add(new Trigger(this, nextOrder++, regex, raw, oneShot, actionName, action));
+    }
+
+    private Trigger add(Trigger trigger) {
+        triggers.put(trigger.order, trigger);
+        dirty = true;
+        return trigger;
+    }
+
+    /**
+     * <p>Remove a trigger.  Returns true iff it was active.</p>
+     */
+    public boolean remove(Trigger trigger) {
+        if (!trigger.active || triggers.remove(trigger.order) == null) return false;
+        trigger.active = false;
+        dirty = true;
+        return true;
+    }
+
+    public void clear() {
+        triggers.values().forEach(t -> t.active = false);
+        triggers.clear();
+        dirty = true;
+    }
+
+    /**
+     * <p>The active triggers in the order they fire.</p>
+     */
+    public List<Trigger> getTriggers() {
+        return Collections.unmodifiableList(new ArrayList<>(triggers.values()));
+    }
+
+    private void compile() {
+        compiled = triggers.values().toArray(new Trigger[0]);
+        literalIds = new int[compiled.length];
+
+        List<String> plainLiterals = new ArrayList<>();
+        List<String> rawLiterals = new ArrayList<>();
+        Map<String, Integer> plainIds = new HashMap<>();
+        Map<String, Integer> rawIds = new HashMap<>();
+
+        for (int i = 0; i < compiled.length; i++) {
+            Trigger trigger = compiled[i];
+
+            if (trigger.literal.isEmpty()) {
+                literalIds[i] = -1;
+            } else {
+                List<String> literals = trigger.isRaw() ? rawLiterals : plainLiterals;
+                Map<String, Integer> ids = trigger.isRaw() ? rawIds : plainIds;
+                literalIds[i] = ids.computeIfAbsent(trigger.literal, l -> {
+                    literals.add(l);
+                    return literals.size() - 1;
+                });
+            }
+        }
+
+        plainScanner = plainLiterals.isEmpty() ? null : new AhoCorasick(plainLiterals);
+        rawScanner = rawLiterals.isEmpty() ? null : new AhoCorasick(rawLiterals);
+        dirty = false;
+    }
+
+    /**
+     * <p>Fire every trigger that matches the line.  Returns the number of triggers that fired.</p>
+     */
+    public int handleLine(LineEvent lineEvent) {
+        if (dirty) compile();
+        if (compiled.length == 0) return 0;
+
+        plainFound.clear();
+        rawFound.clear();
+        if (plainScanner != null) plainScanner.scan(lineEvent.withoutColors(), plainFound);
+        if (rawScanner != null) rawScanner.scan(lineEvent.raw, rawFound);
+
+        int fired = 0;
+        Trigger[] toRun = compiled;
+        int[] ids = literalIds;
+
+        for (int i = 0; i < toRun.length; i++) {
+            Trigger trigger = toRun[i];
+            if (!trigger.active) continue;
+            if (ids[i] >= 0 && !(trigger.isRaw() ? rawFound : plainFound).get(ids[i])) continue;
+
+            Matcher matcher = trigger.pattern.matcher(trigger.isRaw() ? lineEvent.raw : lineEvent.withoutColors());
+            if (!matcher.find()) continue;
+
+            if (trigger.isOneShot()) remove(trigger);
+            trigger.action.onMatch(lineEvent, matcher.toMatchResult());
+            fired++;
+        }
+
+        return fired;
+    }
+
+    /**
+     * <p>Save triggers that run registered actions.</p>
+     */
+    public void save(ReloadData reloadData) {
+        List<String> saved = new ArrayList<>();
+
+        for (Trigger trigger : triggers.values()) {
+            if (trigger.getActionName() != null) {
+                saved.add(ScalaUtils.encodeArray(new String[]{trigger.getRegex(), String.valueOf(trigger.isRaw()),
+                        String.valueOf(trigger.isOneShot()), trigger.getActionName()}));
+            }
+        }
+
+        reloadData.data.put(RELOAD_KEY, ScalaUtils.encodeArray(saved.toArray(new String[0])));
+    }
+
+    /**
+     * <p>Add the triggers saved by {@link TriggerRegistry#save(ReloadData)}, after any triggers already added.
+     * Triggers whose action name isn't registered are skipped.  Returns the number of triggers added.</p>
+     */
+    public int load(ReloadData reloadData) {
+        String data = reloadData.data.get(RELOAD_KEY);
+        if (data == null) return 0;
+
+        int loaded = 0;
+
+        for (String encoded : ScalaUtils.decodeArray(data)) {
+            String[] fields = ScalaUtils.decodeArray(encoded);
+            if (fields.length != 4 || !actions.containsKey(fields[3])) continue;
+
+            add(fields[0], Boolean.parseBoolean(fields[1]), Boolean.parseBoolean(fields[2]), fields[3]);
+            loaded++;
+        }
+
+        return loaded;
+    }
+}
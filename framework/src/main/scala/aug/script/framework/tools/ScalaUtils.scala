@@ -19,7 +19,11 @@ object ScalaUtils {
 
   def encodeColor(code: String): String = "" + 27.toByte.toChar + "[" + code + "m"
 
-  def removeColors(string: String): String = string.replaceAll("\u001B\\[.*?m", "")
+  private val colorPattern = Pattern.compile("\u001B\\[.*?m")
+
+  def removeColors(string: String): String = {
+    if (string.indexOf(27) < 0) string else colorPattern.matcher(string).replaceAll("")
+  }
 
   def encodeArgs(strings: String*): String = encodeIterable(strings)
 
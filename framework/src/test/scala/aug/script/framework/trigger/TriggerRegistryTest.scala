@@ -0,0 +1,79 @@
+package aug.script.framework.trigger
+
+import java.util.regex.MatchResult
+
+import aug.script.framework.tools.Util
+import aug.script.framework.{LineEvent, ReloadData}
+import org.scalatest.flatspec.AnyFlatSpec
+
+import scala.collection.mutable.ListBuffer
+
+class TriggerRegistryTest extends AnyFlatSpec {
+
+  private def line(raw: String) = new LineEvent(0, raw)
+
+  "literals" should "only come from required text" in {
+    assert(Literals.longestRequired("You are hungry.") == "You are hungry")
+    assert(Literals.longestRequired("^(\\w+) tells you '(.*)'$") == " tells you '")
+    assert(Literals.longestRequired("colou?r of magic") == "r of magic")
+    assert(Literals.longestRequired("hungry|thirsty") == "")
+    assert(Literals.longestRequired("(?i)hungry") == "")
+    assert(Literals.longestRequired("\\d+ gold coins") == " gold coins")
+    assert(Literals.longestRequired("a\\Q[x]\\E") == "a[x]")
+  }
+
+  "a registry" should "fire matching triggers in order" in {
+    val registry = new TriggerRegistry
+    val fired = ListBuffer[String]()
+
+    registry.add("^(\\w+) tells you '(.*)'$", (_, m) => fired += s"tell ${m.group(1)}")
+    registry.add("hungry|thirsty", (_, m) => fired += s"need ${m.group()}")
+    registry.add("gold", (_, _) => fired += "gold")
+
+    assert(registry.handleLine(line("Bob tells you 'I am hungry'")) == 2)
+    assert(registry.handleLine(line("nothing to see")) == 0)
+    assert(registry.handleLine(line("5 gold")) == 1)
+    assert(fired == List("tell Bob", "need hungry", "gold"))
+  }
+
+  "a one shot trigger" should "only fire once" in {
+    val registry = new TriggerRegistry
+    var count = 0
+    val trigger = registry.once("You are hungry", (_, _) => count += 1)
+
+    registry.handleLine(line("You are hungry."))
+    registry.handleLine(line("You are hungry."))
+    assert(count == 1)
+    assert(!trigger.isActive)
+    assert(registry.getTriggers.isEmpty)
+  }
+
+  "a raw trigger" should "match colors" in {
+    val registry = new TriggerRegistry
+    var count = 0
+    registry.add(Util.matchColor(1, 31) + "DANGER", true, false, (_: LineEvent, _: MatchResult) => count += 1)
+
+    registry.handleLine(line("\u001b[1;31mDANGER"))
+    registry.handleLine(line("\u001b[0;37mDANGER"))
+    assert(count == 1)
+  }
+
+  "named triggers" should "survive a reload" in {
+    val reloadData = new ReloadData
+    val old = new TriggerRegistry
+    old.registerAction("eat", (_, _) => ())
+    old.add("hungry", "eat")
+    old.once("thirsty", "eat")
+    old.add("anonymous", (_, _) => ())
+    old.save(reloadData)
+
+    val registry = new TriggerRegistry
+    var count = 0
+    registry.registerAction("eat", (_, _) => count += 1)
+    assert(registry.load(reloadData) == 2)
+
+    registry.handleLine(line("hungry and thirsty"))
+    registry.handleLine(line("hungry and thirsty"))
+    assert(count == 3)
+  }
+}
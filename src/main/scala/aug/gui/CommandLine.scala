@@ -6,7 +6,7 @@ import javax.swing._
 import javax.swing.event.CaretEvent
 
 import aug.io.SidePanelColor
-import aug.profile.{Profile, UserCommand}
+import aug.profile.UserCommand
 import aug.misc.RingBuffer
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
@@ -15,7 +15,7 @@ object CommandLine {
   val log = Logger(LoggerFactory.getLogger(CommandLine.getClass))
 }
 
-class CommandLine(profile: Profile) extends JTextArea with KeyListener {
+class CommandLine(profile: GuiProfile) extends JTextArea with KeyListener {
 
   private val log = CommandLine.log
 
@@ -0,0 +1,81 @@
+package aug.gui
+
+import java.awt.Component
+import javax.swing.{BorderFactory, JSplitPane, SwingUtilities}
+
+import aug.gui.text.{ConsoleTextArea, HasHighlight, SplittableTextArea}
+import aug.misc.Util
+import aug.profile._
+import aug.script.framework.{SplitWindow, WindowReference}
+
+/**
+  * <p>A profile shown in a tab of the main window, with its windows painted in Swing.</p>
+  */
+class GuiProfile(config: ProfileConfig, mainWindow: MainWindow)
+  extends Profile(config, mainWindow.slog) with HasHighlight {
+
+  val profilePanel = new ProfilePanel(mainWindow, this)
+  mainWindow.tabbedPane.addProfile(name, profilePanel)
+
+  profilePanel.setContents(console.asInstanceOf[ConsoleTextArea])
+  setProfileConfig(profileConfig)
+  start()
+
+  override protected def newConsole(): ProfileConsole = new ConsoleTextArea(profileConfig, this)
+
+  override protected def newTextWindow(name: String): ProfileWindow = {
+    val sta = new SplittableTextArea(profileConfig, this)
+    sta.setActiveFont(profileConfig.consoleWindow.font.toFont)
+    sta
+  }
+
+  private def textAreas: Iterable[SplittableTextArea] = windows.values.collect { case sta: SplittableTextArea => sta }
+
+  override def setProfileConfig(profileConfig: ProfileConfig): Unit = synchronized {
+    super.setProfileConfig(profileConfig)
+    profilePanel.setProfileConfig(profileConfig)
+    textAreas.foreach({ w =>
+      w.setActiveFont(profileConfig.consoleWindow.font.toFont)
+      w.repaint()
+    })
+  }
+
+  override protected def closed(): Unit = mainWindow.tabbedPane.remove(profilePanel)
+
+  override protected def layoutWindows(windowReference: WindowReference): Unit = {
+    def convertToComponents(windowReference: WindowReference): (Component, List[(JSplitPane, Float)]) = {
+      windowReference match {
+        case sw: SplitWindow =>
+
+          val (c1, l1) = convertToComponents(sw.getTopLeft)
+          val (c2, l2) = convertToComponents(sw.getBotRight)
+
+          val splitPanel = new JSplitPane()
+          splitPanel.setDividerSize(2)
+          splitPanel.setBorder(BorderFactory.createEmptyBorder())
+
+          if (sw.isHorizontal) {
+            splitPanel.setOrientation(JSplitPane.HORIZONTAL_SPLIT)
+            splitPanel.setLeftComponent(c1)
+            splitPanel.setRightComponent(c2)
+          } else {
+            splitPanel.setOrientation(JSplitPane.VERTICAL_SPLIT)
+            splitPanel.setTopComponent(c1)
+            splitPanel.setRightComponent(c2)
+          }
+
+          (splitPanel, l1 ++ l2 :+ (splitPanel, sw.getDividerLocation))
+        case _ => (windows(windowReference.getName).asInstanceOf[SplittableTextArea], List.empty)
+      }
+    }
+
+    val (component, dividerLocations) = convertToComponents(windowReference)
+
+    profilePanel.setContents(component)
+
+    // really terrible hack
+    Util.invokeLater(10, () => SwingUtilities.invokeLater(() => {
+      dividerLocations.foreach(s => s._1.setDividerLocation(s._2))
+    }))
+  }
+}
@@ -2,6 +2,8 @@ package aug.gui
 
 import java.awt.event._
 import java.awt.{Desktop, Frame, Insets}
+import java.io.File
+import java.lang.management.ManagementFactory
 import javax.imageio.ImageIO
 import javax.swing._
 
@@ -14,6 +16,7 @@ import com.bulenkov.darcula.DarculaLaf
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
+import scala.collection.mutable
 import scala.util.{Failure, Try}
 
 class MainWindow extends JFrame {
@@ -201,28 +204,49 @@ object MainWindow {
 }
 
 object Main extends App {
-  ConfigManager.load()
-  ConnectionManager.start()
+  private val startup = mutable.ListBuffer[(String, Long)]("jvm" -> ManagementFactory.getRuntimeMXBean.getUptime)
 
-  OsTools.init("August MC")
+  private def phase[T](name: String)(f: => T): T = {
+    val (ms, rv) = Util.time(f)
+    startup += name -> ms
+    rv
+  }
+
+  phase("config") {
+    Util.loadFonts(new File(ConfigManager.configDir, "fontCatalog.txt"))
+    ConfigManager.load()
+  }
+
+  phase("connections")(ConnectionManager.start())
+
+  phase("look and feel") {
+    OsTools.init("August MC")
+
+    if (OsTools.isLinux) {
+      // IconLoader has NPE without this.
+      UIManager.getFont("Label.font")
+    }
+
+    UIManager.setLookAndFeel(new DarculaLaf)
 
-  if (OsTools.isLinux) {
-    // IconLoader has NPE without this.
-    UIManager.getFont("Label.font")
+    UIManager.put("Tree.textBackground", TransparentColor)
+    UIManager.put("TabbedPane.contentBorderInsets", new Insets(6,0,0,0))
+    UIManager.put("TabbedPane.tabInsets", new Insets(3,10,3,10))
+    UIManager.put("TextArea.margin", 10)
+    UIManager.put("Button.darcula.disabledText.shadow", TransparentColor)
   }
 
-  UIManager.setLookAndFeel(new DarculaLaf)
+  // only the time spent waiting, the fonts load in the background from the start
+  phase("fonts")(Util.monospaceFamilies)
 
-  UIManager.put("Tree.textBackground", TransparentColor)
-  UIManager.put("TabbedPane.contentBorderInsets", new Insets(6,0,0,0))
-  UIManager.put("TabbedPane.tabInsets", new Insets(3,10,3,10))
-  UIManager.put("TextArea.margin", 10)
-  UIManager.put("Button.darcula.disabledText.shadow", TransparentColor)
+  val mainWindow = phase("window")(new MainWindow)
 
-  val mainWindow = new MainWindow
+  mainWindow.slog.info(s"started in ${startup.map(_._2).sum}ms: " +
+    startup.map { case (name, ms) => s"$name ${ms}ms" }.mkString(", "))
 
   def exit(): Unit = {
     ConfigManager.closeAllProfiles()
+    ConfigManager.flush()
     ConnectionManager.close()
     Frame.getFrames.foreach(_.dispose())
     System.exit(0)
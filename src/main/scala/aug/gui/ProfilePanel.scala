@@ -6,9 +6,9 @@ import javax.swing.border.EmptyBorder
 import javax.swing.{JPanel, SpringLayout}
 
 import aug.gui.text.HasHighlight
-import aug.profile.{Profile, ProfileConfig}
+import aug.profile.ProfileConfig
 
-class ProfilePanel(val mainWindow: MainWindow, val profile: Profile) extends JPanel with HasHighlight {
+class ProfilePanel(val mainWindow: MainWindow, val profile: GuiProfile) extends JPanel with HasHighlight {
   private val springLayout = new SpringLayout
   private val container = new JPanel
   container.setLayout(new GridLayout(1, 1))
@@ -83,6 +83,66 @@ class GmcpPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
     "GMCP"))
 }
 
+class CharsetPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
+  setLayout(new GridBagLayout)
+  private val c = new GridBagConstraints()
+
+  val charsetBox = new ComboBox(Array("UTF-8", "ISO-8859-1", "windows-1252", "US-ASCII"), profileConfigPanel.setDirty())
+  charsetBox.setToolTipText("Character set used to decode text from the server and encode commands sent to it.")
+
+  c.anchor = GridBagConstraints.WEST
+  c.weightx = 1
+  c.gridx = 0
+  c.gridy = 0
+  c.insets = new Insets(0, 10, 0, 10)
+  add(charsetBox, c)
+
+  setBorder(BorderFactory.createTitledBorder(
+    BorderFactory.createEtchedBorder(),
+    "charset"))
+
+  def setCharset(charset: String): Unit = {
+    if ((0 until charsetBox.getItemCount).forall(charsetBox.getItemAt(_) != charset)) {
+      charsetBox.addItem(charset)
+    }
+    charsetBox.setSelectedItem(charset)
+  }
+}
+
+class PacingPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
+  setLayout(new GridBagLayout)
+  private val c = new GridBagConstraints()
+
+  val commandsField = new RegexTextField("^[0-9]{1,4}$", 4, profileConfigPanel.setDirty)
+  val millisField = new RegexTextField("^[1-9][0-9]{0,5}$", 6, profileConfigPanel.setDirty)
+
+  private val commandsLabel = new JLabel("commands: ")
+  commandsLabel.setToolTipText("Most commands sent per interval, the rest wait in a queue.  0 sends everything " +
+    "right away.")
+
+  c.weightx = 1
+  c.gridx = 0
+  c.gridy = 0
+  c.insets = new Insets(0, 10, 0, 0)
+  add(commandsLabel, c)
+
+  c.gridx = 1
+  c.insets = new Insets(0, 0, 0, 0)
+  add(commandsField, c)
+
+  c.gridx = 2
+  c.insets = new Insets(0, 10, 0, 0)
+  add(new JLabel("per ms: "), c)
+
+  c.gridx = 3
+  c.insets = new Insets(0, 0, 0, 10)
+  add(millisField, c)
+
+  setBorder(BorderFactory.createTitledBorder(
+    BorderFactory.createEtchedBorder(),
+    "send pacing"))
+}
+
 class TelnetConfigPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
   setLayout(new GridBagLayout)
 
@@ -98,15 +158,23 @@ class TelnetConfigPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
   setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10))
   val hostPanel = new HostPanel(profileConfigPanel)
   val gmcpPanel = new GmcpPanel(profileConfigPanel)
+  val charsetPanel = new CharsetPanel(profileConfigPanel)
+  val pacingPanel = new PacingPanel(profileConfigPanel)
 
   add(hostPanel, c)
 
   c.gridy = 1
   add(gmcpPanel, c)
 
+  c.gridy = 2
+  add(charsetPanel, c)
+
+  c.gridy = 3
+  add(pacingPanel, c)
+
   c.fill = GridBagConstraints.BOTH
   c.weighty = 100
-  c.gridy= 2
+  c.gridy= 4
   add(new JPanel(), c)
 }
 
@@ -220,8 +288,15 @@ class ClasspathPanel(settingsWindow: SettingsWindow, profileConfigPanel: Profile
 class JavaOptionsPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
   setLayout(new GridBagLayout())
   val modeComboBox = new JComboBox[String](Array("disabled", "enabled", "autostart"))
+  val executionComboBox = new JComboBox[String](Array("thread", "direct"))
+  executionComboBox.setToolTipText("thread runs the client on its own thread, direct runs it on the profile " +
+    "thread, which is faster but a client that ignores interrupts can hang the profile")
   val timeoutLabel = new JLabel("timeout: ")
   val timeoutText = new RegexTextField("^[1-9]{1}[0-9]{0,4}$", 5, profileConfigPanel.setDirty)
+  val fragmentLabel = new JLabel("fragment delay: ")
+  val fragmentText = new RegexTextField("^(-1|[0-9]{1,4})$", 5, profileConfigPanel.setDirty)
+  fragmentLabel.setToolTipText("0 sends every partial line to the client, -1 only prompts (GA/EOR), " +
+    "a positive number waits that many ms of quiet")
 
   val c = new GridBagConstraints()
   c.anchor = GridBagConstraints.WEST
@@ -231,18 +306,26 @@ class JavaOptionsPanel(profileConfigPanel: ProfileConfigPanel) extends JPanel {
   add(modeComboBox, c)
 
   c.gridx = 1
+  add(executionComboBox, c)
+
+  c.gridx = 2
   c.fill = GridBagConstraints.HORIZONTAL
   c.weightx = 100
   add(new JPanel, c)
 
-  c.gridx = 2
+  c.gridx = 3
   c.weightx = 1
   c.fill = GridBagConstraints.NONE
   add(timeoutLabel, c)
-  c.gridx = 3
+  c.gridx = 4
   add(timeoutText, c)
+  c.gridx = 5
+  add(fragmentLabel, c)
+  c.gridx = 6
+  add(fragmentText, c)
 
   modeComboBox.addActionListener((e: ActionEvent) => profileConfigPanel.setDirty())
+  executionComboBox.addActionListener((e: ActionEvent) => profileConfigPanel.setDirty())
 }
 
 class JavaConfigPanel(settingsWindow: SettingsWindow, profileConfigPanel: ProfileConfigPanel) extends JPanel {
@@ -335,9 +418,14 @@ class ProfileConfigPanel(val settingsWindow: SettingsWindow, var profileConfig:
     telnetConfigPanel.hostPanel.portField.setText(profileConfig.telnetConfig.port.toString)
     telnetConfigPanel.gmcpPanel.enabledBox.setSelectionEnabled(profileConfig.telnetConfig.gmcpEnabled)
     telnetConfigPanel.gmcpPanel.supportsField.setText(profileConfig.telnetConfig.gmcpSupports)
+    telnetConfigPanel.charsetPanel.setCharset(profileConfig.telnetConfig.charset)
+    telnetConfigPanel.pacingPanel.commandsField.setText(profileConfig.telnetConfig.paceCommands.toString)
+    telnetConfigPanel.pacingPanel.millisField.setText(profileConfig.telnetConfig.paceMillis.toString)
 
     javaConfigPanel.toprow.timeoutText.setText(profileConfig.javaConfig.clientTimeout.toString)
+    javaConfigPanel.toprow.fragmentText.setText(profileConfig.javaConfig.fragmentDelay.toString)
     javaConfigPanel.toprow.modeComboBox.setSelectedItem(profileConfig.javaConfig.clientMode)
+    javaConfigPanel.toprow.executionComboBox.setSelectedItem(profileConfig.javaConfig.clientExecution)
     javaConfigPanel.mainClassField.setText(profileConfig.javaConfig.mainClass)
     javaConfigPanel.classpathPanel.model.removeAllElements()
     profileConfig.javaConfig.classPath.foreach{javaConfigPanel.classpathPanel.model.addElement}
@@ -347,7 +435,13 @@ class ProfileConfigPanel(val settingsWindow: SettingsWindow, var profileConfig:
     uiConfigPanel.consoleWindowConfigPanel.echoCheck.setSelected(profileConfig.consoleWindow.echoCommands)
     uiConfigPanel.consoleWindowConfigPanel.stackCheck.setSelected(profileConfig.consoleWindow.stackCmds)
     uiConfigPanel.consoleWindowConfigPanel.onNewLineCheck.setSelected(profileConfig.consoleWindow.cmdsOnNewLine)
+    uiConfigPanel.consoleWindowConfigPanel.scrollbackText.setText(profileConfig.consoleWindow.scrollbackLines.toString)
+    uiConfigPanel.consoleWindowConfigPanel.maxFpsText.setText(profileConfig.consoleWindow.maxFps.toString)
     uiConfigPanel.loggingConfigPanel.autoLogCombo.setSelectedItem(profileConfig.autoLog)
+    uiConfigPanel.loggingConfigPanel.maxSizeText.setText(profileConfig.logConfig.maxSizeMb.toString)
+    uiConfigPanel.loggingConfigPanel.dailyCheck.setSelected(profileConfig.logConfig.rotateDaily)
+    uiConfigPanel.loggingConfigPanel.compressCheck.setSelected(profileConfig.logConfig.compress)
+    uiConfigPanel.loggingConfigPanel.recordCheck.setSelected(profileConfig.logConfig.recordSession)
   }
 
   def setDirty() : Unit = settingsWindow.setProfileDirty(profileConfig.name)
@@ -374,12 +468,18 @@ class ProfileConfigPanel(val settingsWindow: SettingsWindow, var profileConfig:
         host = telnetConfigPanel.hostPanel.hostField.getText,
         port = toInt(telnetConfigPanel.hostPanel.portField.getText, profileConfig.telnetConfig.port),
         gmcpEnabled = telnetConfigPanel.gmcpPanel.enabledBox.isSelectionEnabled,
-        gmcpSupports = telnetConfigPanel.gmcpPanel.supportsField.getText
+        gmcpSupports = telnetConfigPanel.gmcpPanel.supportsField.getText,
+        charset = telnetConfigPanel.charsetPanel.charsetBox.getSelectedItem.toString,
+        paceCommands = toInt(telnetConfigPanel.pacingPanel.commandsField.getText,
+          profileConfig.telnetConfig.paceCommands),
+        paceMillis = toInt(telnetConfigPanel.pacingPanel.millisField.getText, profileConfig.telnetConfig.paceMillis)
       ),
       javaConfig = JavaConfig(
         clientMode = javaConfigPanel.toprow.modeComboBox.getSelectedItem.toString,
         mainClass = javaConfigPanel.mainClassField.getText,
         clientTimeout = toInt(javaConfigPanel.toprow.timeoutText.getText, profileConfig.javaConfig.clientTimeout),
+        fragmentDelay = toInt(javaConfigPanel.toprow.fragmentText.getText, profileConfig.javaConfig.fragmentDelay),
+        clientExecution = javaConfigPanel.toprow.executionComboBox.getSelectedItem.toString,
         classPath = enumToArray(javaConfigPanel.classpathPanel.model.elements())
       ),
       commandLineFont = FontConfig(
@@ -390,9 +490,18 @@ class ProfileConfigPanel(val settingsWindow: SettingsWindow, var profileConfig:
         font = uiConfigPanel.consoleWindowConfigPanel.fontButton.getSelectedFont,
         echoCommands = uiConfigPanel.consoleWindowConfigPanel.echoCheck.isSelected,
         stackCmds = uiConfigPanel.consoleWindowConfigPanel.stackCheck.isSelected,
-        cmdsOnNewLine = uiConfigPanel.consoleWindowConfigPanel.onNewLineCheck.isSelected
+        cmdsOnNewLine = uiConfigPanel.consoleWindowConfigPanel.onNewLineCheck.isSelected,
+        scrollbackLines = toInt(uiConfigPanel.consoleWindowConfigPanel.scrollbackText.getText,
+          profileConfig.consoleWindow.scrollbackLines),
+        maxFps = toInt(uiConfigPanel.consoleWindowConfigPanel.maxFpsText.getText, profileConfig.consoleWindow.maxFps)
       ),
-      autoLog = uiConfigPanel.loggingConfigPanel.autoLogCombo.getSelectedItem.toString
+      autoLog = uiConfigPanel.loggingConfigPanel.autoLogCombo.getSelectedItem.toString,
+      logConfig = LogConfig(
+        maxSizeMb = toInt(uiConfigPanel.loggingConfigPanel.maxSizeText.getText, profileConfig.logConfig.maxSizeMb),
+        rotateDaily = uiConfigPanel.loggingConfigPanel.dailyCheck.isSelected,
+        compress = uiConfigPanel.loggingConfigPanel.compressCheck.isSelected,
+        recordSession = uiConfigPanel.loggingConfigPanel.recordCheck.isSelected
+      )
     )
   }
 }
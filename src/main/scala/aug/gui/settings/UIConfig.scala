@@ -27,6 +27,14 @@ class WindowConfigPanel(profileConfigPanel: ProfileConfigPanel) extends GridPane
   stackLabel.setToolTipText("If not checked, each command has its own line.")
   val stackCheck = new CheckBox(profileConfigPanel.setDirty())
 
+  private val scrollbackLabel = new JLabel("scrollback")
+  scrollbackLabel.setToolTipText("Number of lines kept in memory, older lines are dropped.")
+  val scrollbackText = new RegexTextField("^[1-9]{1}[0-9]{2,7}$", 8, profileConfigPanel.setDirty)
+
+  private val maxFpsLabel = new JLabel("max fps")
+  maxFpsLabel.setToolTipText("Most times per second the console repaints while text is arriving.")
+  val maxFpsText = new RegexTextField("^[1-9]{1}[0-9]{0,2}$", 3, profileConfigPanel.setDirty)
+
   addToGrid(fontButton, 0, 0)
 
   c.insets = LeftInsets
@@ -44,7 +52,17 @@ class WindowConfigPanel(profileConfigPanel: ProfileConfigPanel) extends GridPane
   c.insets = NoInsets
   addToGrid(stackCheck, 6, 0)
 
-  fillHorizontal(7, 0)
+  c.insets = LeftInsets
+  addToGrid(scrollbackLabel, 7, 0)
+  c.insets = NoInsets
+  addToGrid(scrollbackText, 8, 0)
+
+  c.insets = LeftInsets
+  addToGrid(maxFpsLabel, 9, 0)
+  c.insets = NoInsets
+  addToGrid(maxFpsText, 10, 0)
+
+  fillHorizontal(11, 0)
 
   setTitledBorder("console")
 }
@@ -53,12 +71,48 @@ class LoggingConfigPanel(profileConfigPanel: ProfileConfigPanel) extends GridPan
   private val autoLogLabel = new JLabel("autolog")
   val autoLogCombo = new ComboBox(Array("none", "without color", "with color", "both"), profileConfigPanel.setDirty())
 
+  private val maxSizeLabel = new JLabel("max MB")
+  maxSizeLabel.setToolTipText("A new log file is started once the current one reaches this size, 0 for no limit.")
+  val maxSizeText = new RegexTextField("^[0-9]{1,6}$", 6, profileConfigPanel.setDirty)
+
+  private val dailyLabel = new JLabel("daily")
+  dailyLabel.setToolTipText("If checked, a new log file is started each day.")
+  val dailyCheck = new CheckBox(profileConfigPanel.setDirty())
+
+  private val compressLabel = new JLabel("gzip")
+  compressLabel.setToolTipText("If checked, log files are gzipped once closed.")
+  val compressCheck = new CheckBox(profileConfigPanel.setDirty())
+
+  private val recordLabel = new JLabel("record")
+  recordLabel.setToolTipText("If checked, the raw bytes received are recorded to the log directory for replay.")
+  val recordCheck = new CheckBox(profileConfigPanel.setDirty())
+
   c.insets = LeftInsets
   addToGrid(autoLogLabel, 0, 0)
   c.insets = NoInsets
   addToGrid(autoLogCombo, 1, 0)
 
-  fillHorizontal(2, 0)
+  c.insets = LeftInsets
+  addToGrid(maxSizeLabel, 2, 0)
+  c.insets = NoInsets
+  addToGrid(maxSizeText, 3, 0)
+
+  c.insets = LeftInsets
+  addToGrid(dailyLabel, 4, 0)
+  c.insets = NoInsets
+  addToGrid(dailyCheck, 5, 0)
+
+  c.insets = LeftInsets
+  addToGrid(compressLabel, 6, 0)
+  c.insets = NoInsets
+  addToGrid(compressCheck, 7, 0)
+
+  c.insets = LeftInsets
+  addToGrid(recordLabel, 8, 0)
+  c.insets = NoInsets
+  addToGrid(recordCheck, 9, 0)
+
+  fillHorizontal(10, 0)
 
   setTitledBorder("logging")
 }
@@ -1,14 +1,39 @@
 package aug.gui.text
 
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+import aug.gui.GuiProfile
 import aug.io.{ColorlessTextLogger, TextLogger}
-import aug.profile.{Profile, ProfileConfig}
+import aug.profile.{ConfigManager, FragmentQuiet, Profile, ProfileConfig, ProfileConsole}
 import aug.script.framework.{LineEvent, LineWithNum}
 import aug.misc.Util.closeQuietly
 
-import scala.annotation.tailrec
+import scala.util.{Failure, Success, Try}
+
+/**
+  * <p>The console of a profile painted in its tab.</p>
+  */
+class ConsoleTextArea(profileConfig: ProfileConfig, protected val profile: GuiProfile) extends
+  SplittableTextArea(profileConfig, profile) with ConsoleText {
+
+  setPaintTimes(profile.metrics.paint)
+}
+
+/**
+  * <p>The console of a profile without a UI, kept in memory and logged but never painted.</p>
+  */
+class HeadlessConsole(profileConfig: ProfileConfig, protected val profile: Profile) extends
+  TextBuffer(profileConfig) with ConsoleText
 
-class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
-  SplittableTextArea(profileConfig, profile) with AutoCloseable {
+/**
+  * <p>What makes a text window a console: turning text from the server into lines and fragments for the client,
+  * echoing commands and logging.</p>
+  */
+trait ConsoleText extends ProfileConsole {
+  protected val profile: Profile
+  def text: Text
+  def requestRepaint(): Unit
 
   import profile.withClient
 
@@ -18,61 +43,146 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
   private var lastGA: Boolean = false
   private var lineNum: Long = 0
   private var nextLineNum: Long = 1
-  private var fragment: String = ""
+  private val fragment = new PartialLine
+  @volatile private var fragmentDelay: Int = text.profileConfig.javaConfig.fragmentDelay
+  private var fragmentNotified: Boolean = true
+  private var fragmentQuietPending: Boolean = false
+  private var lastFragmentNanos: Long = 0
   private var textLogger : Option[TextLogger] = None
   private var colorlessTextLogger : Option[ColorlessTextLogger] = None
 
-  def addLine(line: String, sendToClient: Boolean = false): Unit = synchronized {
-    if (!sendToClient || !withClient(_.handleLine(new LineEvent(lineNum, line))).contains(true)) {
-      text.setLine(lineNum, line)
+  // a file per console, other processes may have the same profile open
+  Try {
+    val profileDir = ConfigManager.getProfileDir(text.profileConfig.name)
+    profileDir.mkdirs()
+    ScrollbackSpill.sweep(profileDir)
+    Files.createTempFile(profileDir.toPath, "scrollback", ".spill").toFile
+  } match {
+    case Success(file) => text.spillTo(file)
+    case Failure(e) => slog.error(s"failed to create a scrollback spill file: ${e.getMessage}")
+  }
+
+  abstract override def setProfileConfig(profileConfig: ProfileConfig): Unit = {
+    super.setProfileConfig(profileConfig)
+    fragmentDelay = profileConfig.javaConfig.fragmentDelay
+  }
+
+  override def addLine(line: String, sendToClient: Boolean = false): Unit = synchronized {
+    val parsed = text.parse(lineNum, line)
+
+    if (!sendToClient || !withClient(_.handleLine(new LineEvent(lineNum, line, parsed.plainText))).contains(true)) {
+      text.setLine(parsed)
     }
 
     lineNum = nextLineNum
     nextLineNum += 1
-    fragment = ""
-    repaint()
+    clearFragment()
+    requestRepaint()
   }
 
+  /**
+    * <p>Add complete lines, sending them to the client in one call.  The first line takes the active line number
+    * like addLine.</p>
+    */
+  def addLines(lines: Array[String]): Unit = synchronized {
+    val parsed = lines.indices.map { i =>
+      text.parse(if (i == 0) lineNum else nextLineNum + i - 1, lines(i))
+    }
+
+    val events = lines.indices.map { i => new LineEvent(parsed(i).lineNum, lines(i), parsed(i).plainText) }.toArray
+    val swallowed = withClient(_.handleLines(events)).flatMap(Option(_)).getOrElse(Array.empty[Boolean])
+
+    parsed.indices.foreach { i =>
+      if (i >= swallowed.length || !swallowed(i)) text.setLine(parsed(i))
+    }
+
+    lineNum = nextLineNum + lines.length - 1
+    nextLineNum += lines.length
+    clearFragment()
+    requestRepaint()
+  }
+
+  /**
+    * <p>Append text to the active line.  Only the new text is parsed.  The client hears about the fragment now, on
+    * the next GA/EOR or after a quiet period, depending on the fragment delay.</p>
+    */
   def appendFragment(line: String): Unit = synchronized {
-    fragment += line
-    withClient(_.handleFragment(new LineEvent(lineNum, fragment)))
-    text.setLine(lineNum, fragment)
-    repaint()
+    text.appendPartial(lineNum, fragment, line)
+    fragmentNotified = false
+
+    if (fragmentDelay == 0) {
+      notifyFragment()
+    } else if (fragmentDelay > 0 && fragment.nonEmpty) {
+      lastFragmentNanos = System.nanoTime
+      scheduleFragmentQuiet(fragmentDelay)
+    }
+
+    requestRepaint()
   }
 
-  def processText(txt: String, ga: Boolean) : Unit = synchronized {
+  /**
+    * <p>Called on the profile thread once a fragment delay may have passed without new text.</p>
+    */
+  def fragmentQuiet(): Unit = synchronized {
+    fragmentQuietPending = false
 
-    if (lastGA) {
-      addLine(fragment)
+    if (!fragmentNotified && fragmentDelay > 0) {
+      val remaining = fragmentDelay - TimeUnit.NANOSECONDS.toMillis(System.nanoTime - lastFragmentNanos)
+      if (remaining <= 0) notifyFragment() else scheduleFragmentQuiet(remaining)
     }
+  }
 
-    lastGA = ga
+  private def scheduleFragmentQuiet(delay: Long): Unit = {
+    if (!fragmentQuietPending) {
+      fragmentQuietPending = true
+      profile.offerIn(delay, FragmentQuiet())
+    }
+  }
 
-    textLogger.foreach(_.addText(txt))
-    colorlessTextLogger.foreach(_.addText(txt))
+  private def notifyFragment(): Unit = {
+    fragmentNotified = true
+    withClient(_.handleFragment(new LineEvent(lineNum, fragment.text, fragment.plainText)))
+  }
 
-    @tailrec
-    def handleText(texts: List[String]): Unit = {
-      texts match {
-        case List(last) =>
-          appendFragment(last)
+  private def clearFragment(): Unit = {
+    text.endPartial()
+    fragment.clear()
+    fragmentNotified = true
+  }
 
-        case xs :: tail =>
-          addLine(fragment + xs, sendToClient = true)
-          handleText(tail)
+  def processText(txt: String, ga: Boolean) : Unit = synchronized {
+    profile.metrics.processText.time {
+      if (lastGA) {
+        addLine(fragment.text)
+      }
+
+      lastGA = ga
+
+      textLogger.foreach(_.addText(txt))
+      colorlessTextLogger.foreach(_.addText(txt))
+
+      // the -1 is necessary not to swallow empty splits
+      val texts = txt.split("\n", -1)
 
-        case Nil =>
+      if (texts.length > 1) {
+        val lines = texts.init
+        lines(0) = fragment.text + lines(0)
+        addLines(lines)
+        profile.metrics.linesRead.mark(lines.length)
       }
-    }
 
-    // the -1 is necessary not to swallow empty splits
-    handleText(txt.split("\n", -1).toList)
+      appendFragment(texts.last)
+
+      if (ga && !fragmentNotified && fragment.nonEmpty) {
+        notifyFragment()
+      }
+    }
   }
 
   def echoCommand(cmd: String) : Unit = synchronized {
-    val ln = if (fragment.length > 0) lineNum else lineNum - 1
+    val ln = if (fragment.nonEmpty) lineNum else lineNum - 1
     text.addCommand(ln, cmd)
-    repaint()
+    requestRepaint()
   }
 
   def log(on: Boolean, color: Boolean): Unit = {
@@ -81,14 +191,14 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
       textLogger = None
       slog.info(s"no longer logging colored text")
     } else if (on && color && textLogger.isEmpty) {
-      textLogger = Some(new TextLogger(logDir))
+      textLogger = Some(new TextLogger(logDir, text.profileConfig.logConfig))
       slog.info(s"logging color to $logDir")
     } else if (!on && !color && colorlessTextLogger.isDefined) {
       closeQuietly(colorlessTextLogger.foreach(_.close()))
       colorlessTextLogger = None
       slog.info(s"no longer logging")
     } else if (on && !color && textLogger.isEmpty) {
-      colorlessTextLogger = Some(new ColorlessTextLogger(logDir))
+      colorlessTextLogger = Some(new ColorlessTextLogger(logDir, text.profileConfig.logConfig))
       slog.info(s"logging to $logDir")
     }
   }
@@ -96,10 +206,11 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
   override def close(): Unit = {
     closeQuietly(textLogger.foreach(_.close()))
     closeQuietly(colorlessTextLogger.foreach(_.close()))
+    text.closeSpill()
   }
 
   private def echoLine(line: String): Unit = {
-    if (fragment == "") {
+    if (fragment.isEmpty) {
       addLine(line)
     } else {
       text.setLine(nextLineNum, line)
@@ -113,7 +224,7 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
     }
 
     echoLine(line)
-    repaint()
+    requestRepaint()
   }
 
   override def echo(lines: Array[String]): Unit = synchronized {
@@ -123,18 +234,18 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
 
     lines.foreach(echoLine)
 
-    repaint()
+    requestRepaint()
   }
 
-  override def clear(): Unit = synchronized {
+  abstract override def clear(): Unit = synchronized {
     super.clear()
     lineNum = 0
-    fragment = ""
+    clearFragment()
     nextLineNum = 1
     lastGA = false
   }
 
-  override def setLine(lineWithNum: LineWithNum): Unit = synchronized {
+  abstract override def setLine(lineWithNum: LineWithNum): Unit = synchronized {
     if (lineWithNum.lineNum >= lineNum) {
       throw new RuntimeException(s"Cannot set lines on or after the active line (console window only) " +
         s"which is currently $lineNum")
@@ -143,7 +254,7 @@ class ConsoleTextArea(profileConfig: ProfileConfig, profile: Profile) extends
     super.setLine(lineWithNum)
   }
 
-  override def setLines(lines: Array[LineWithNum]): Unit = synchronized {
+  abstract override def setLines(lines: Array[LineWithNum]): Unit = synchronized {
     if (lines.exists(_.lineNum >= lineNum)) {
       throw new RuntimeException(s"Cannot set lines on or after the active line (console window only) " +
         s"which is currently $lineNum")
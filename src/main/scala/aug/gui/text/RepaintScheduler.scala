@@ -0,0 +1,53 @@
+package aug.gui.text
+
+import java.awt.Component
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{Executors, TimeUnit}
+import javax.swing.SwingUtilities
+
+object RepaintScheduler {
+  private[text] val executor = Executors.newSingleThreadScheduledExecutor { r =>
+    val thread = new Thread(r, "RepaintScheduler")
+    thread.setDaemon(true)
+    thread
+  }
+}
+
+/**
+  * <p>Coalesces the repaints text windows ask for while output arrives.  A request only marks the window dirty;
+  * the first request after a paint schedules the next one, no sooner than one frame after the last paint, so a
+  * burst of lines costs at most one paint per frame.  Windows that aren't showing, like profiles in tabs that
+  * aren't selected, are skipped since Swing paints them when they become visible.</p>
+  *
+  * <p>Safe to call from any thread, painting happens on the event dispatch thread.</p>
+  */
+class RepaintScheduler(component: Component, maxFps: Int) {
+  import RepaintScheduler.executor
+
+  private val dirty = new AtomicBoolean(false)
+  @volatile private var frameNanos = toFrameNanos(maxFps)
+  @volatile private var lastPaint = 0L
+
+  private def toFrameNanos(fps: Int): Long = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps)
+
+  def setMaxFps(maxFps: Int): Unit = frameNanos = toFrameNanos(maxFps)
+
+  def requestRepaint(): Unit = {
+    if (dirty.compareAndSet(false, true)) {
+      val delay = lastPaint + frameNanos - System.nanoTime
+
+      if (delay <= 0) {
+        SwingUtilities.invokeLater(() => paint())
+      } else executor.schedule(new Runnable {
+        override def run(): Unit = SwingUtilities.invokeLater(() => paint())
+      }, delay, TimeUnit.NANOSECONDS)
+    }
+  }
+
+  private def paint(): Unit = {
+    dirty.set(false)
+    lastPaint = System.nanoTime
+
+    if (component.isShowing) component.repaint()
+  }
+}
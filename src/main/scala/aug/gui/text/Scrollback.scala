@@ -0,0 +1,167 @@
+package aug.gui.text
+
+import aug.io.ColorCode
+
+/**
+  * <p>A line as the scrollback stores it: all of its text in one char array, with colors run length encoded as
+  * pairs of (end index, packed color code) in a single int array.</p>
+  */
+final class PackedLine(val lineNum: Long, val chars: Array[Char], val runs: Array[Int], val commands: List[String]) {
+
+  def withCommands(commands: List[String]): PackedLine = new PackedLine(lineNum, chars, runs, commands)
+
+  /**
+    * <p>The text without colors or commands.</p>
+    */
+  def plainText: String = new String(chars)
+
+  def toLine: Line = {
+    val fragments = List.newBuilder[Fragment]
+    var start = 0
+    var i = 0
+
+    while (i < runs.length) {
+      val end = runs(i)
+      fragments += Fragment(new String(chars, start, end - start), ColorCode.unpack(runs(i + 1)))
+      start = end
+      i += 2
+    }
+
+    Line(fragments.result(), commands, lineNum)
+  }
+}
+
+object PackedLine {
+  private val NoRuns = Array.empty[Int]
+  private val NoChars = Array.empty[Char]
+
+  def apply(line: Line): PackedLine = {
+    if (line.fragments.isEmpty) {
+      new PackedLine(line.lineNum, NoChars, NoRuns, line.commands)
+    } else {
+      val chars = line.fragments.map(_.text).mkString.toCharArray
+      val runs = new Array[Int](line.fragments.size * 2)
+      var end = 0
+
+      line.fragments.zipWithIndex.foreach { case (fragment, i) =>
+        end += fragment.text.length
+        runs(i * 2) = end
+        runs(i * 2 + 1) = ColorCode.pack(fragment.colorCode)
+      }
+
+      new PackedLine(line.lineNum, chars, runs, line.commands)
+    }
+  }
+}
+
+/**
+  * <p>Reusable buffers {@link Text} parses a line into before packing it.  Adjacent text with the same color ends
+  * up in one run.</p>
+  */
+private[text] class LinePacker {
+  private var chars = new Array[Char](256)
+  private var runs = new Array[Int](32)
+  private var length = 0
+  private var numRuns = 0
+
+  def clear(): Unit = {
+    length = 0
+    numRuns = 0
+  }
+
+  def append(c: Char, colorCode: ColorCode): Unit = {
+    val packed = ColorCode.pack(colorCode)
+
+    if (numRuns == 0 || runs(numRuns * 2 - 1) != packed) {
+      if (numRuns * 2 == runs.length) runs = java.util.Arrays.copyOf(runs, runs.length * 2)
+      runs(numRuns * 2 + 1) = packed
+      numRuns += 1
+    }
+
+    if (length == chars.length) chars = java.util.Arrays.copyOf(chars, chars.length * 2)
+    chars(length) = c
+    length += 1
+    runs(numRuns * 2 - 2) = length
+  }
+
+  def text: String = new String(chars, 0, length)
+
+  def result(lineNum: Long, commands: List[String]): PackedLine = {
+    new PackedLine(lineNum, java.util.Arrays.copyOf(chars, length), java.util.Arrays.copyOf(runs, numRuns * 2),
+      commands)
+  }
+}
+
+/**
+  * <p>Ring buffer of the last capacity lines, indexed by line number.  A line is held in slot lineNum % capacity
+  * and is evicted once a line capacity or more numbers above it is stored.  Writes to line numbers that have
+  * already scrolled out of the window are dropped.  Evicted lines are handed to onEvict, oldest first when lines
+  * are added in order.</p>
+  *
+  * <p>Not thread safe, {@link Text} synchronizes access.</p>
+  */
+class Scrollback(val capacity: Int, onEvict: PackedLine => Unit = _ => ()) {
+  require(capacity > 0, "scrollback capacity must be positive")
+
+  private val slots = new Array[PackedLine](capacity)
+  private var top: Long = -1
+
+  private def slot(lineNum: Long): Int = (lineNum % capacity).toInt
+
+  /**
+    * <p>The lowest line number still inside the window.</p>
+    */
+  def firstLine: Long = Math.max(0, top - capacity + 1)
+
+  /**
+    * <p>The highest line number ever stored, -1 when empty.</p>
+    */
+  def lastLine: Long = top
+
+  def inWindow(lineNum: Long): Boolean = lineNum >= 0 && lineNum >= top - capacity + 1
+
+  def get(lineNum: Long): Option[PackedLine] = {
+    if (lineNum < 0) None else {
+      val line = slots(slot(lineNum))
+      if (line != null && line.lineNum == lineNum) Some(line) else None
+    }
+  }
+
+  /**
+    * <p>Store the line, evicting whatever occupied its slot.  Returns false if the line number is below the
+    * window.</p>
+    */
+  def put(line: PackedLine): Boolean = {
+    if (!inWindow(line.lineNum)) false else {
+      val i = slot(line.lineNum)
+      val evicted = slots(i)
+      if (evicted != null && evicted.lineNum != line.lineNum) onEvict(evicted)
+      slots(i) = line
+      top = Math.max(top, line.lineNum)
+      true
+    }
+  }
+
+  /**
+    * <p>A new scrollback with a different capacity holding as many of the most recent lines as fit, the rest are
+    * evicted.</p>
+    */
+  def resize(capacity: Int): Scrollback = {
+    val resized = new Scrollback(capacity, onEvict)
+    val keepFrom = top - capacity + 1
+    var lineNum = firstLine
+
+    while (lineNum <= top) {
+      get(lineNum).foreach { line => if (lineNum < keepFrom) onEvict(line) else resized.put(line) }
+      lineNum += 1
+    }
+
+    resized.top = top
+    resized
+  }
+
+  def clear(): Unit = {
+    java.util.Arrays.fill(slots.asInstanceOf[Array[AnyRef]], null)
+    top = -1
+  }
+}
@@ -0,0 +1,241 @@
+package aug.gui.text
+
+import java.io.File
+import java.nio.channels.{ClosedChannelException, FileChannel}
+import java.util.concurrent.ConcurrentHashMap
+import java.nio.file.StandardOpenOption
+import java.nio.{ByteBuffer, MappedByteBuffer}
+
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.util.{Failure, Success, Try}
+
+object ScrollbackSpill {
+  val log = Logger(LoggerFactory.getLogger(ScrollbackSpill.getClass))
+
+  private val WindowSize = 1 << 22
+  private val FlushSize = 1 << 16
+  private val HeaderSize = 8 + 4 + 4 + 4
+
+  // spills open in this JVM, never swept since closing any channel to a file drops this JVM's locks on it
+  private val live = ConcurrentHashMap.newKeySet[File]()
+
+  private def isSpill(name: String): Boolean = name.startsWith("scrollback") && name.endsWith(".spill")
+
+  /**
+    * <p>Delete spill files in dir left behind by consoles that never closed, after a crash or a kill.  An open
+    * spill holds a lock on its file, so only files nobody has locked are deleted.</p>
+    */
+  def sweep(dir: File): Unit = {
+    val files = Option(dir.listFiles((_, name) => isSpill(name))).getOrElse(Array.empty[File])
+
+    files.filterNot(f => live.contains(f.getAbsoluteFile)).foreach { file =>
+      Try {
+        val channel = FileChannel.open(file.toPath, StandardOpenOption.WRITE)
+        try {
+          val lock = channel.tryLock()
+          if (lock != null) lock.release()
+          lock != null
+        } finally channel.close()
+      } match {
+        case Success(true) => if (file.delete()) log.info(s"deleted stale scrollback spill $file")
+        case Success(false) => // another process is spilling to it
+        case Failure(e) => log.debug(s"not sweeping $file", e)
+      }
+    }
+  }
+}
+
+/**
+  * <p>Overflow tier for {@link Scrollback}.  Evicted lines are appended to a file and found again through an in
+  * memory index of line number to file offset.  Appended records collect in a buffer that is written out when it
+  * fills or before a read, so a burst of evictions costs one write per buffer rather than one per line.  Reads go
+  * through a read only memory mapped window of the file that is moved whenever a line falls outside of it, so
+  * scrolling far back pages from disk instead of holding the session on the heap.</p>
+  *
+  * <p>Each record is the line number, the number of chars, runs and commands, then the chars, the runs and each
+  * command as a length followed by its chars.  The file only lives as long as the session and belongs to one
+  * console, it is truncated when opened and deleted on close.  The file is locked while open, so {@link #sweep}
+  * can tell files left behind by a crash from those in use.</p>
+  *
+  * <p>Not thread safe, {@link Text} synchronizes access.</p>
+  */
+class ScrollbackSpill(file: File) extends AutoCloseable {
+  import ScrollbackSpill._
+
+  private var channel = FileChannel.open(file.toPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+  private var lock = channel.tryLock()
+  private var closed = false
+
+  live.add(file.getAbsoluteFile)
+
+  private var writeBuffer = ByteBuffer.allocate(FlushSize)
+  // bytes written to the file, records still in writeBuffer come after
+  private var size: Long = 0
+
+  // offsets(i) is where line base + i starts, -1 if that line was never spilled
+  private var offsets = Array.fill(1 << 12)(-1L)
+  private var base: Long = -1
+  private var count = 0
+
+  private var window: MappedByteBuffer = _
+  private var windowStart: Long = 0
+
+  log.debug(s"spilling scrollback to $file")
+
+  /**
+    * <p>The lowest line number spilled, -1 if nothing has been.</p>
+    */
+  def firstLine: Long = base
+
+  def append(line: PackedLine): Unit = {
+    if (base == -1) base = line.lineNum
+    if (line.lineNum < base) return
+
+    val length = HeaderSize + line.chars.length * 2 + line.runs.length * 4 +
+      line.commands.map(4 + _.length * 2).sum
+
+    if (writeBuffer.remaining < length) flush()
+    if (writeBuffer.capacity < length) writeBuffer = ByteBuffer.allocate(Math.max(writeBuffer.capacity * 2, length))
+
+    val offset = size + writeBuffer.position()
+    writeBuffer.putLong(line.lineNum)
+    writeBuffer.putInt(line.chars.length)
+    writeBuffer.putInt(line.runs.length)
+    writeBuffer.putInt(line.commands.size)
+    writeBuffer.asCharBuffer().put(line.chars)
+    writeBuffer.position(writeBuffer.position() + line.chars.length * 2)
+    line.runs.foreach(writeBuffer.putInt)
+    line.commands.foreach { cmd =>
+      writeBuffer.putInt(cmd.length)
+      cmd.foreach(writeBuffer.putChar)
+    }
+
+    setOffset(line.lineNum, offset)
+  }
+
+  private def flush(): Unit = {
+    writeBuffer.flip()
+    while (writeBuffer.hasRemaining) size += io(_.write(writeBuffer, size))
+    writeBuffer.clear()
+  }
+
+  /**
+    * <p>Run f on the channel, reopening it if it was closed by interrupting the calling thread.  The client
+    * watchdog interrupts the profile thread, which must not end spilling for the rest of the session, so the
+    * interrupt is held off while retrying and restored after.  Writes are positional, so a retry just rewrites
+    * the same bytes.</p>
+    */
+  private def io[T](f: FileChannel => T): T = {
+    var interrupted = false
+
+    try {
+      var result: Option[T] = None
+
+      while (result.isEmpty) {
+        try {
+          result = Some(f(channel))
+        } catch {
+          case _: ClosedChannelException if !closed =>
+            interrupted |= Thread.interrupted()
+            log.debug(s"reopening $file after an interrupt")
+            channel = FileChannel.open(file.toPath, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            lock = channel.tryLock()
+        }
+      }
+
+      result.get
+    } finally {
+      if (interrupted) Thread.currentThread.interrupt()
+    }
+  }
+
+  private def setOffset(lineNum: Long, offset: Long): Unit = {
+    val index = (lineNum - base).toInt
+
+    if (index >= offsets.length) {
+      val grown = java.util.Arrays.copyOf(offsets, Math.max(offsets.length * 2, index + 1))
+      java.util.Arrays.fill(grown, offsets.length, grown.length, -1L)
+      offsets = grown
+    }
+
+    offsets(index) = offset
+    count = Math.max(count, index + 1)
+  }
+
+  def get(lineNum: Long): Option[PackedLine] = {
+    if (base == -1 || lineNum < base || lineNum - base >= count) return None
+
+    val offset = offsets((lineNum - base).toInt)
+    if (offset == -1) None else {
+      if (offset >= size) flush()
+      Some(read(offset))
+    }
+  }
+
+  private def mapped(offset: Long, length: Int): ByteBuffer = {
+    if (window == null || offset < windowStart || offset + length > windowStart + window.capacity) {
+      windowStart = offset
+      val windowSize = Math.min(Math.max(WindowSize, length), size - offset)
+      window = io(_.map(FileChannel.MapMode.READ_ONLY, offset, windowSize))
+    }
+
+    val buffer = window.duplicate()
+    buffer.position((offset - windowStart).toInt)
+    buffer
+  }
+
+  private def read(offset: Long): PackedLine = {
+    val header = mapped(offset, HeaderSize)
+    val lineNum = header.getLong
+    val numChars = header.getInt
+    val numRuns = header.getInt
+    val numCommands = header.getInt
+
+    val fixedLength = HeaderSize + numChars * 2 + numRuns * 4
+    var buffer = mapped(offset, fixedLength)
+    buffer.position(buffer.position() + HeaderSize)
+
+    val chars = new Array[Char](numChars)
+    buffer.asCharBuffer().get(chars)
+    buffer.position(buffer.position() + numChars * 2)
+
+    val runs = new Array[Int](numRuns)
+    buffer.asIntBuffer().get(runs)
+    buffer.position(buffer.position() + numRuns * 4)
+
+    var commandOffset = offset + fixedLength
+    val commands = List.fill(numCommands) {
+      val length = mapped(commandOffset, 4).getInt
+      buffer = mapped(commandOffset, 4 + length * 2)
+      buffer.position(buffer.position() + 4)
+      val cmd = new Array[Char](length)
+      buffer.asCharBuffer().get(cmd)
+      commandOffset += 4 + length * 2
+      new String(cmd)
+    }
+
+    new PackedLine(lineNum, chars, runs, commands)
+  }
+
+  /**
+    * <p>Forget every spilled line.  The file isn't truncated since it may still be mapped, new lines are appended
+    * after the old records.</p>
+    */
+  def clear(): Unit = {
+    writeBuffer.clear()
+    java.util.Arrays.fill(offsets, 0, count, -1L)
+    base = -1
+    count = 0
+  }
+
+  override def close(): Unit = {
+    closed = true
+    live.remove(file.getAbsoluteFile)
+    window = null
+    channel.close()
+    file.delete()
+  }
+}
@@ -7,18 +7,19 @@ import javax.swing.JSplitPane
 import javax.swing.border.EmptyBorder
 
 import aug.io.{ColorScheme, ConfigurableColorScheme}
-import aug.profile.{ConfigManager, ProfileConfig}
-import aug.script.framework.{LineEvent, LineWithNum, TextWindowInterface}
-import aug.misc.Util
+import aug.profile.{ConfigManager, ProfileConfig, ProfileWindow}
+import aug.script.framework.{LineEvent, LineWithNum}
+import aug.misc.{Histogram, Util}
 
 class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighlight)
-  extends JSplitPane with MouseWheelListener with TextWindowInterface {
+  extends JSplitPane with MouseWheelListener with ProfileWindow {
   val text = new Text(profileConfig)
   private val topTextArea = new TextArea(hasHighlight, text)
   private val textArea = new TextArea(hasHighlight, text)
   private var scrollPos : Long = 0
   private var scrollSpeed = 4
   private var splittable = true
+  private val repaintScheduler = new RepaintScheduler(this, profileConfig.consoleWindow.maxFps)
 
   setOrientation(JSplitPane.VERTICAL_SPLIT)
   setDividerSize(1)
@@ -34,7 +35,23 @@ class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighligh
 
   setBorder(new EmptyBorder(0, 0, 0, 0))
 
-  def setProfileConfig(profileConfig: ProfileConfig): Unit = text.profileConfig = profileConfig
+  def setProfileConfig(profileConfig: ProfileConfig): Unit = {
+    text.profileConfig = profileConfig
+    repaintScheduler.setMaxFps(profileConfig.consoleWindow.maxFps)
+  }
+
+  /**
+    * <p>Record how long painting takes.</p>
+    */
+  def setPaintTimes(histogram: Histogram): Unit = {
+    topTextArea.paintTimes = Some(histogram)
+    textArea.paintTimes = Some(histogram)
+  }
+
+  /**
+    * <p>Repaint once the current frame is over, for changes to the text.</p>
+    */
+  def requestRepaint(): Unit = repaintScheduler.requestRepaint()
 
   def setActiveFont(font: Font): Unit = {
     setFont(font)
@@ -72,7 +89,7 @@ class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighligh
 
   def handleUp() : Unit = {
     if(!isSplit) split() else {
-      scrollPos = Math.max(scrollPos - scrollSpeed, 1)
+      scrollPos = Math.max(scrollPos - scrollSpeed, Math.max(text.firstLine, 1))
       topTextArea.setBotLine(scrollPos)
     }
   }
@@ -84,17 +101,17 @@ class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighligh
 
   override def echo(line: String): Unit = {
     text.addLine(line)
-    repaint()
+    requestRepaint()
   }
 
   override def echo(lines: Array[String]): Unit = {
     lines.foreach(l=> text.addLine(l))
-    repaint()
+    requestRepaint()
   }
 
   override def clear(): Unit = {
     text.clear()
-    repaint()
+    requestRepaint()
   }
 
   override def setSplittable(splittable: Boolean): Unit = {
@@ -104,7 +121,7 @@ class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighligh
 
   override def setLine(lineWithNum: LineWithNum): Unit = {
     text.setLine(lineWithNum.lineNum, lineWithNum.line)
-    repaint()
+    requestRepaint()
   }
 
   override def setHighlightable(highlightable: Boolean): Unit = {
@@ -148,14 +165,14 @@ class SplittableTextArea(profileConfig: ProfileConfig, hasHighlight: HasHighligh
   }
 
   override def getLine(lineNum: Long): Optional[LineEvent] = {
-    val opt: Option[LineEvent] = text.get(lineNum).map(_.colorStr).map{ raw =>
-      new LineEvent(lineNum, raw)
+    val opt: Option[LineEvent] = text.get(lineNum).map { line =>
+      new LineEvent(lineNum, line.colorStr, line.str)
     }
     Optional.of(opt.orNull)
   }
 
   override def setLines(lines: Array[LineWithNum]): Unit = {
     text.setLines(lines)
-    repaint()
+    requestRepaint()
   }
 }
@@ -1,5 +1,7 @@
 package aug.gui.text
 
+import java.io.File
+
 import aug.io._
 import aug.profile.ProfileConfig
 import aug.script.framework.LineWithNum
@@ -170,106 +172,67 @@ object EmptyLine {
   def apply(lineNum: Long): Line = Line(List(Fragment("", DefaultColorCode)), List.empty, lineNum)
 }
 
+private[text] case class WrappedLine(wrapAt: Int, echo: Int, lines: List[Line])
+
 sealed trait TextState
 case object TextStateStream extends TextState
 case object TextStateColor extends TextState
 case object TextStateEscape extends TextState
 
-class Text(var profileConfig: ProfileConfig) {
-
+/**
+  * <p>Parses the color codes out of text fed to it in pieces.  The current color and any escape sequence cut off
+  * by the end of a piece carry over to the next, so a line that arrives over many reads is scanned once.</p>
+  */
+private[text] class LineParser {
   import Text.log
-  private val lines = scala.collection.mutable.Map[Long, Line]()
-  private var botLine : Long = 0
-
-  lines(botLine) = EmptyLine(botLine)
-
-  def get(lineNum: Long): Option[Line] = synchronized(lines.get(lineNum))
-  def apply(lineNum: Long): Line = synchronized(lines.getOrElse(lineNum, EmptyLine(lineNum)))
-
-  def getWrapLines(numLines: Int, wrapAt: Int, botLine: Long): List[Line] = synchronized {
-    val bl = if(botLine == -1) this.botLine else botLine
-
-    @tailrec
-    def get(numLines: Int, lineNum: Long, rv: List[Line] = List.empty): List[Line] = {
-      if(numLines <= 0 || lineNum < 0) {
-        rv
-      } else {
-        val toadd = lines.getOrElse(lineNum, EmptyLine(lineNum)).mergeCommands(profileConfig).flatMap(_.split(wrapAt))
-        get(numLines - toadd.size, lineNum - 1, toadd ++ rv)
-      }
-    }
 
-    val rv = get(numLines, bl)
-    rv.drop(rv.length - numLines)
-  }
+  private val packer = new LinePacker
+  private val color = StringBuilder.newBuilder
+  private var colorCode : ColorCode = DefaultColorCode
+  private var state : TextState = TextStateStream
 
-  def length: Long = synchronized(botLine)
-
-  def addCommand(lineNum: Long, cmd: String): Unit = synchronized {
-    val line = lines(lineNum)
-    lines(lineNum) = line.copy(commands = line.commands :+ cmd)
+  def clear(): Unit = {
+    packer.clear()
+    color.clear
+    colorCode = DefaultColorCode
+    state = TextStateStream
   }
 
-  def addLine(txt: String): Unit = synchronized {
-    setLine(botLine + 1, txt)
-  }
-
-  def setLines(lines: Array[LineWithNum]): Unit = synchronized {
-    lines.foreach(lwn => setLine(lwn.lineNum, lwn.line))
-  }
-
-  def setLine(lineNum: Long, txt: String): Unit = synchronized {
+  def feed(txt: String): Unit = {
     if (txt.contains("\n")) throw new Exception("text should not contain newline")
 
-    var colorCode : ColorCode = DefaultColorCode
-
-    val color = StringBuilder.newBuilder
-    val text = StringBuilder.newBuilder
-    var state : TextState = TextStateStream
-
-    val fragments = List.newBuilder[Fragment]
-
-    def addFragment() : Unit = {
-      if (text.nonEmpty) {
-        fragments +=  Fragment(text.result(), colorCode)
-        text.clear
-      }
-    }
-
-    txt.getBytes.foreach { b =>
+    txt.foreach { c =>
       state match {
         case TextStateStream =>
-          if (b == 27.toByte) {
-            addFragment()
+          if (c == 27) {
             state = TextStateEscape
-          } else if (b != '\r') {
-            text += b.toChar
+          } else if (c != '\r') {
+            packer.append(c, colorCode)
           }
 
         case TextStateColor =>
-          if (b == 'm') {
+          if (c == 'm') {
             colorCode = setColor(color.result(), colorCode)
             color.clear
             state = TextStateStream
           } else {
-            color += b.toChar
+            color += c
           }
 
         case TextStateEscape =>
-          state = if (b == '[') {
+          state = if (c == '[') {
             TextStateColor
           } else TextStateStream
       }
     }
+  }
 
-    addFragment()
-
-    if (lines.size > lineNum) {
-      lines(lineNum) = lines(lineNum).copy(fragments = fragments.result())
-    } else lines(lineNum) = Line(fragments.result(), List.empty, lineNum)
+  /**
+    * <p>The text fed so far without colors.</p>
+    */
+  def plainText: String = packer.text
 
-    botLine = Math.max(botLine, lineNum)
-  }
+  def result(lineNum: Long, commands: List[String]): PackedLine = packer.result(lineNum, commands)
 
   private def setColor(s: String, colorCode: ColorCode) : ColorCode = {
 
@@ -323,14 +286,245 @@ class Text(var profileConfig: ProfileConfig) {
         DefaultColorCode
     }
   }
+}
+
+/**
+  * <p>The line still arriving from the server.  Text is appended in place and only the new part is parsed, so a
+  * prompt that comes in a byte at a time costs linear rather than quadratic work.</p>
+  */
+class PartialLine {
+  private val raw = new java.lang.StringBuilder
+  private val parser = new LineParser
+
+  def append(txt: String): Unit = {
+    parser.feed(txt)
+    raw.append(txt)
+  }
+
+  def isEmpty: Boolean = raw.length == 0
+
+  def nonEmpty: Boolean = !isEmpty
+
+  /**
+    * <p>The text as received, with colors.</p>
+    */
+  def text: String = raw.toString
+
+  def plainText: String = parser.plainText
+
+  def packed(lineNum: Long): PackedLine = parser.result(lineNum, List.empty)
+
+  def clear(): Unit = {
+    raw.setLength(0)
+    parser.clear()
+  }
+}
+
+class Text(private var config: ProfileConfig) {
+
+  import Text.{WrapCacheSize, echoSettings, log, scrollbackLines}
+  private var scrollback = new Scrollback(scrollbackLines(config), spillLine)
+  private var spill: Option[ScrollbackSpill] = None
+  private val parser = new LineParser
+  private var botLine : Long = 0
+
+  // the line still being received, only packed when read or ended
+  private var partial: PartialLine = _
+  private var partialLineNum: Long = -1
+
+  /**
+    * <p>Lines after mergeCommands and split, by line number.  An entry is only used if it was wrapped at the same
+    * width with the same echo settings, so width, font and config changes are picked up without flushing the cache.
+    * setLine and addCommand drop the entry for their line.</p>
+    */
+  private val wrapCache = new java.util.LinkedHashMap[java.lang.Long, WrappedLine](WrapCacheSize, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[java.lang.Long, WrappedLine]): Boolean = {
+      size > WrapCacheSize
+    }
+  }
+
+  scrollback.put(PackedLine(EmptyLine(botLine)))
+
+  def profileConfig: ProfileConfig = synchronized(config)
+
+  def profileConfig_=(profileConfig: ProfileConfig): Unit = synchronized {
+    config = profileConfig
+    val capacity = scrollbackLines(profileConfig)
+    if (capacity != scrollback.capacity) scrollback = scrollback.resize(capacity)
+  }
+
+  /**
+    * <p>Append lines evicted from the scrollback to the given file so they can still be scrolled back to.</p>
+    */
+  def spillTo(file: File): Unit = synchronized {
+    closeSpill()
+    Try(new ScrollbackSpill(file)) match {
+      case Success(s) => spill = Some(s)
+      case Failure(e) => log.error(s"failed to open scrollback spill file $file", e)
+    }
+  }
+
+  def closeSpill(): Unit = synchronized {
+    spill.foreach(s => Try(s.close()))
+    spill = None
+  }
+
+  private def withSpill[T](f: ScrollbackSpill => T): Option[T] = {
+    spill.flatMap { s =>
+      Try(f(s)) match {
+        case Success(t) => Some(t)
+        case Failure(e) =>
+          log.error("scrollback spill failed, no longer spilling", e)
+          closeSpill()
+          None
+      }
+    }
+  }
+
+  private def spillLine(line: PackedLine): Unit = withSpill(_.append(line))
+
+  /**
+    * <p>The oldest line number still held in memory or on disk, anything below it has been dropped.</p>
+    */
+  def firstLine: Long = synchronized {
+    withSpill(_.firstLine).filter(_ >= 0).getOrElse(scrollback.firstLine)
+  }
+
+  def get(lineNum: Long): Option[Line] = synchronized {
+    val packed = partialAt(lineNum).orElse(scrollback.get(lineNum)).orElse {
+      if (lineNum < scrollback.firstLine) withSpill(_.get(lineNum)).flatten else None
+    }
+
+    packed.map(_.toLine)
+  }
+
+  def apply(lineNum: Long): Line = synchronized(get(lineNum).getOrElse(EmptyLine(lineNum)))
+
+  private def partialAt(lineNum: Long): Option[PackedLine] = {
+    if (partial == null || lineNum != partialLineNum) None else {
+      val commands = scrollback.get(lineNum).map(_.commands).getOrElse(List.empty)
+      Some(partial.packed(lineNum).withCommands(commands))
+    }
+  }
+
+  /**
+    * <p>Append text to line, the line still being received at lineNum, which reads through to it until it's
+    * replaced by setLine or ended.  It's only packed when read, so a line that arrives a few bytes at a time costs
+    * its length to receive rather than the square of it.</p>
+    */
+  def appendPartial(lineNum: Long, line: PartialLine, txt: String): Unit = synchronized {
+    line.append(txt)
+    partial = line
+    partialLineNum = lineNum
+    wrapCache.remove(lineNum)
+    botLine = Math.max(botLine, lineNum)
+  }
+
+  /**
+    * <p>Store the partial line as it stands, after which it's no longer read and may be cleared.</p>
+    */
+  def endPartial(): Unit = synchronized {
+    if (partial != null) {
+      val line = partial
+      partial = null
+      setLine(line.packed(partialLineNum))
+    }
+  }
+
+  private def wrapLine(lineNum: Long, wrapAt: Int, echo: Int): List[Line] = {
+    val cached = wrapCache.get(lineNum)
+
+    if (cached != null && cached.wrapAt == wrapAt && cached.echo == echo) cached.lines else {
+      val lines = apply(lineNum).mergeCommands(config).flatMap(_.split(wrapAt))
+      wrapCache.put(lineNum, WrappedLine(wrapAt, echo, lines))
+      lines
+    }
+  }
+
+  def getWrapLines(numLines: Int, wrapAt: Int, botLine: Long): List[Line] = synchronized {
+    val bl = if(botLine == -1) this.botLine else botLine
+    val echo = echoSettings(config)
+
+    @tailrec
+    def get(numLines: Int, lineNum: Long, rv: List[Line] = List.empty): List[Line] = {
+      if(numLines <= 0 || lineNum < 0) {
+        rv
+      } else {
+        val toadd = wrapLine(lineNum, wrapAt, echo)
+        get(numLines - toadd.size, lineNum - 1, toadd ++ rv)
+      }
+    }
+
+    val rv = get(numLines, bl)
+    rv.drop(rv.length - numLines)
+  }
+
+  def length: Long = synchronized(botLine)
+
+  def addCommand(lineNum: Long, cmd: String): Unit = synchronized {
+    val line = scrollback.get(lineNum).getOrElse(PackedLine(Line(List.empty, List.empty, lineNum)))
+    scrollback.put(line.withCommands(line.commands :+ cmd))
+    wrapCache.remove(lineNum)
+  }
+
+  def addLine(txt: String): Unit = synchronized {
+    setLine(botLine + 1, txt)
+  }
+
+  def setLines(lines: Array[LineWithNum]): Unit = synchronized {
+    lines.foreach(lwn => setLine(lwn.lineNum, lwn.line))
+  }
+
+  def setLine(lineNum: Long, txt: String): Unit = synchronized {
+    setLine(parse(lineNum, txt))
+  }
+
+  /**
+    * <p>Store a line returned by parse, keeping any commands already on that line.</p>
+    */
+  def setLine(line: PackedLine): Unit = synchronized {
+    if (line.lineNum == partialLineNum) partial = null
+    val commands = scrollback.get(line.lineNum).map(_.commands).getOrElse(List.empty)
+
+    if (scrollback.put(line.withCommands(commands))) {
+      wrapCache.remove(line.lineNum)
+      botLine = Math.max(botLine, line.lineNum)
+    } else log.debug(s"dropping line ${line.lineNum}, it is older than the scrollback")
+  }
+
+  /**
+    * <p>Parse the color codes out of a line of text without storing it.  The result's plain text is the line
+    * without colors, so the codes only need to be scanned once.</p>
+    */
+  def parse(lineNum: Long, txt: String): PackedLine = synchronized {
+    parser.clear()
+    parser.feed(txt)
+    parser.result(lineNum, List.empty)
+  }
 
   def clear(): Unit = synchronized {
-    lines.clear()
+    scrollback.clear()
+    withSpill(_.clear())
+    wrapCache.clear()
+    partial = null
+    botLine = 0
   }
 }
 
 object Text {
   val log = Logger(LoggerFactory.getLogger(Text.getClass))
+
+  private val MinScrollbackLines = 100
+  private val WrapCacheSize = 4096
+
+  private def echoSettings(profileConfig: ProfileConfig): Int = {
+    val window = profileConfig.consoleWindow
+    (if (window.echoCommands) 1 else 0) | (if (window.cmdsOnNewLine) 2 else 0) | (if (window.stackCmds) 4 else 0)
+  }
+
+  private def scrollbackLines(profileConfig: ProfileConfig): Int = {
+    Math.max(MinScrollbackLines, profileConfig.consoleWindow.scrollbackLines)
+  }
 }
 
 case class TextPos(lineNum: Long, pos: Int) extends Comparable[TextPos] {
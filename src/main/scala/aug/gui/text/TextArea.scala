@@ -3,15 +3,52 @@ package aug.gui.text
 import java.awt.datatransfer.StringSelection
 import java.awt.event._
 import java.awt.image.BufferedImage
-import java.awt.{Font, Graphics, Toolkit}
+import java.awt.{Color, Font, Graphics, Graphics2D, Toolkit}
 import javax.swing.JPanel
 
 import aug.io._
+import aug.misc.Histogram
 
 import scala.annotation.tailrec
 
+/**
+  * <p>Colors for each color code under one color scheme, looked up once and kept.</p>
+  */
+private[text] class ColorCache(colorScheme: ColorScheme) {
+  private val fgColors = new Array[Color](ColorCode.NumPacked)
+  private val bgColors = new Array[Color](ColorCode.NumPacked)
+
+  val background: Color = colorScheme.color(TelnetColorDefaultBg)
+
+  def fg(colorCode: ColorCode): Color = {
+    val packed = ColorCode.pack(colorCode)
+    if (fgColors(packed) == null) fgColors(packed) = colorCode.fgColor(colorScheme)
+    fgColors(packed)
+  }
+
+  def bg(colorCode: ColorCode): Color = {
+    val packed = ColorCode.pack(colorCode)
+    if (bgColors(packed) == null) bgColors(packed) = colorCode.bgColor(colorScheme)
+    bgColors(packed)
+  }
+}
+
+object TextArea {
+  /**
+    * <p>Keep an off-screen image of the text and only draw the rows that changed since the last paint.  When output
+    * scrolls the text up, the image is moved with copyArea and only the new rows are drawn.</p>
+    */
+  val backBuffer: Boolean = System.getProperty("aug.gui.text.TextArea.backBuffer", "true").toBoolean
+
+  // stands in for rows whose pixels no longer match anything, never equal to a real row
+  private val StaleRow = Line(List.empty, List.empty, -1, -1)
+}
+
 class TextArea(hasHighlight: HasHighlight, val text: Text) extends JPanel {
+  import TextArea.StaleRow
+
   private var colorScheme : ColorScheme = DefaultColorScheme
+  private var colors = new ColorCache(colorScheme)
   private var fontWidth = 0
   private var fontHeight = 0
   private var fontDescent = 0
@@ -19,17 +56,25 @@ class TextArea(hasHighlight: HasHighlight, val text: Text) extends JPanel {
   private var numLines = 0
   private var numChars = 0
   private var clipHeight = 0
+  private[text] var paintTimes: Option[Histogram] = None
   private var clipWidth = 0
   private var botLine : Long = -1
   private var lines : Option[List[Line]] = None
   private var anchor : Option[TextPos] = None
   private var highlightTo : Option[TextPos] = None
 
+  // the back buffer, and the rows drawn into it from the bottom up
+  private var image : BufferedImage = _
+  private var imageScale = 1.0
+  private var drawnRows : Array[Line] = Array.empty
+
   setBackground(colorScheme.color(TelnetColorDefaultBg))
   setFocusable(false)
 
-  def setColorScheme(colorScheme: ColorScheme): Unit = {
+  def setColorScheme(colorScheme: ColorScheme): Unit = synchronized {
     this.colorScheme = colorScheme
+    colors = new ColorCache(colorScheme)
+    image = null
     setBackground(colorScheme.color(TelnetColorDefaultBg))
     repaint()
   }
@@ -54,13 +99,13 @@ class TextArea(hasHighlight: HasHighlight, val text: Text) extends JPanel {
     fontWidth = metrics.stringWidth("a")
     fontHeight = metrics.getHeight
     fontDescent = metrics.getDescent
+    image = null
 
     repaint()
   }
 
   override def paint(g: Graphics): Unit = synchronized {
-    super.paint(g)
-
+    val start = System.nanoTime
     clipHeight = getHeight
     clipWidth = getWidth
     val height = clipHeight - 5
@@ -70,27 +115,121 @@ class TextArea(hasHighlight: HasHighlight, val text: Text) extends JPanel {
     val linesToDraw = highlightLines(text.getWrapLines(numLines, numChars, botLine))
     lines = Some(linesToDraw)
 
-    @tailrec
-    def drawLine(fragments: List[Fragment], x: Int, y: Int): Unit = {
-      fragments match {
-        case Nil =>
-        case head :: xs =>
-          val width = fontWidth*head.text.length
+    val rows = new Array[Line](Math.max(numLines, 0))
+    linesToDraw.reverseIterator.zipWithIndex.foreach { case (line, index) => rows(index) = line }
+
+    if (TextArea.backBuffer && clipWidth > 0 && clipHeight > 0) {
+      paintBuffered(g, rows, height)
+    } else {
+      super.paint(g)
+      rows.indices.foreach { index =>
+        if (rows(index) != null) drawLine(g, rows(index).fragments, 5, height - index * fontHeight)
+      }
+    }
+
+    paintTimes.foreach(_.recordNanos(System.nanoTime - start))
+  }
+
+  @tailrec
+  private def drawLine(g: Graphics, fragments: List[Fragment], x: Int, y: Int): Unit = {
+    fragments match {
+      case Nil =>
+      case head :: xs =>
+        val width = fontWidth*head.text.length
+
+        if (head.colorCode.bg != TelnetColorDefaultBg) {
+          g.setColor(colors.bg(head.colorCode))
+          g.fillRect(x, y - fontHeight, width, fontHeight)
+        }
+
+        g.setColor(colors.fg(head.colorCode))
+        g.drawString(head.text, x, y - fontDescent)
+
+        drawLine(g, xs, x + width, y)
+    }
+  }
+
+  private def paintBuffered(g: Graphics, rows: Array[Line], height: Int): Unit = {
+    val g2 = g.asInstanceOf[Graphics2D]
+    val scale = g2.getTransform.getScaleX
+    val pixelWidth = Math.ceil(clipWidth * scale).toInt
+    val pixelHeight = Math.ceil(clipHeight * scale).toInt
+
+    if (image == null || image.getWidth != pixelWidth || image.getHeight != pixelHeight || imageScale != scale ||
+      drawnRows.length != rows.length) {
+      image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB)
+      imageScale = scale
+      drawnRows = new Array[Line](rows.length)
+
+      val ig = image.createGraphics()
+      ig.setColor(colors.background)
+      ig.fillRect(0, 0, pixelWidth, pixelHeight)
+      ig.dispose()
+    }
+
+    val ig = image.createGraphics()
 
-          if (head.colorCode.bg != TelnetColorDefaultBg) {
-            g.setColor(head.colorCode.bgColor(colorScheme))
-            g.fillRect(x, y - fontHeight, width, fontHeight)
-          }
+    try {
+      scrollImage(ig, rowShift(rows), height, scale)
 
-          g.setColor(head.colorCode.fgColor(colorScheme))
-          g.drawString(head.text, x, y - fontDescent)
+      ig.scale(scale, scale)
+      ig.setRenderingHints(g2.getRenderingHints)
+      ig.setFont(getFont)
 
-          drawLine(xs, x + width, y)
+      rows.indices.foreach { index =>
+        if (rows(index) != drawnRows(index)) {
+          val y = height - index * fontHeight
+          ig.setColor(colors.background)
+          ig.fillRect(0, y - fontHeight, clipWidth, fontHeight)
+          if (rows(index) != null) drawLine(ig, rows(index).fragments, 5, y)
+        }
       }
+
+      drawnRows = rows
+    } finally {
+      ig.dispose()
     }
 
-    linesToDraw.reverse.zipWithIndex.foreach {
-      case (line, index) => drawLine(line.fragments, 5, height - index * fontHeight)
+    g.drawImage(image, 0, 0, clipWidth, clipHeight, null)
+  }
+
+  /**
+    * <p>How many rows the text moved up since the last paint, negative if it moved down.  Rows are matched by line
+    * number and position, what they contain is compared row by row after the move.</p>
+    */
+  private def rowShift(rows: Array[Line]): Int = {
+    def sameRow(a: Line, b: Line) = a != null && b != null && a.lineNum == b.lineNum && a.pos == b.pos
+
+    if (rows.isEmpty) 0 else {
+      val up = rows.indexWhere(sameRow(_, drawnRows(0)))
+
+      if (up >= 0) up else Math.min(0, -drawnRows.indexWhere(sameRow(_, rows(0))))
+    }
+  }
+
+  /**
+    * <p>Move the pixels of the text rows by shift rows, marking the rows that were uncovered as stale, along with
+    * any row copied from the top row if that was cut off.  Only done when rows land on whole pixels, otherwise the
+    * rows are left in place and redrawn.</p>
+    */
+  private def scrollImage(ig: Graphics2D, shift: Int, height: Int, scale: Double): Unit = {
+    val areaHeight = height * scale
+    val rowHeight = fontHeight * scale
+
+    if (shift == 0 || Math.abs(shift) >= drawnRows.length || areaHeight != Math.rint(areaHeight) ||
+      rowHeight != Math.rint(rowHeight)) return
+
+    val dy = (shift * rowHeight).toInt
+    val area = areaHeight.toInt
+    val wholeRows = height / fontHeight
+
+    if (dy > 0) {
+      ig.copyArea(0, dy, image.getWidth, area - dy, 0, -dy)
+    } else ig.copyArea(0, 0, image.getWidth, area + dy, 0, -dy)
+
+    drawnRows = Array.tabulate(drawnRows.length) { index =>
+      val from = index - shift
+      if (from >= 0 && from < wholeRows) drawnRows(from) else StaleRow
     }
   }
 
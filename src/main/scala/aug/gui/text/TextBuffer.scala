@@ -0,0 +1,64 @@
+package aug.gui.text
+
+import java.util.Optional
+
+import aug.misc.Util
+import aug.profile.{ProfileConfig, ProfileWindow}
+import aug.script.framework.{LineEvent, LineWithNum}
+
+/**
+  * <p>A text window that only keeps its lines, for profiles without a UI.  Clients can write to it and read it
+  * back like any window, while splitting, fonts and color schemes are accepted and ignored.</p>
+  */
+class TextBuffer(profileConfig: ProfileConfig) extends ProfileWindow {
+  val text = new Text(profileConfig)
+
+  def setProfileConfig(profileConfig: ProfileConfig): Unit = {
+    text.profileConfig = profileConfig
+  }
+
+  /**
+    * <p>Nothing to paint.</p>
+    */
+  def requestRepaint(): Unit = {}
+
+  override def echo(line: String): Unit = text.addLine(line)
+
+  override def echo(lines: Array[String]): Unit = lines.foreach(l => text.addLine(l))
+
+  override def clear(): Unit = text.clear()
+
+  override def setLine(lineWithNum: LineWithNum): Unit = text.setLine(lineWithNum.lineNum, lineWithNum.line)
+
+  override def setLines(lines: Array[LineWithNum]): Unit = text.setLines(lines)
+
+  override def getLine(lineNum: Long): Optional[LineEvent] = {
+    val opt: Option[LineEvent] = text.get(lineNum).map { line =>
+      new LineEvent(lineNum, line.colorStr, line.str)
+    }
+    Optional.ofNullable(opt.orNull)
+  }
+
+  override def setSplittable(splittable: Boolean): Unit = {}
+
+  override def split(): Unit = {}
+
+  override def unsplit(): Unit = {}
+
+  override def setHighlightable(highlightable: Boolean): Unit = {}
+
+  override def setTextFont(fontName: String, size: Int): Unit = {}
+
+  override def getFontSizes: Array[Int] = Util.fontSizes
+
+  /**
+    * <p>No fonts without a display.</p>
+    */
+  override def getFonts: Array[String] = Array.empty
+
+  override def setColorScheme(colorSchemeName: String): Unit = {}
+
+  override def setTopColorScheme(colorSchemeName: String): Unit = {}
+
+  override def setBottomColorScheme(colorSchemeName: String): Unit = {}
+}
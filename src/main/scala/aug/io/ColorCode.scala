@@ -59,6 +59,46 @@ case class ColorCode(fg: TelnetColor, bg: TelnetColor = TelnetColorDefaultBg, bo
   }
 }
 
+/**
+  * <p>Packs color codes into small ints for compact storage, and hands back shared instances when unpacking so
+  * nothing is allocated per lookup.</p>
+  */
+object ColorCode {
+  private val colors: Array[TelnetColor] = Array(TelnetColorDefaultFg, TelnetColorDefaultBg, TelnetColorBlack,
+    TelnetColorRed, TelnetColorGreen, TelnetColorYellow, TelnetColorBlue, TelnetColorMagenta, TelnetColorCyan,
+    TelnetColorWhite)
+
+  private val numColors = colors.length
+
+  private val codes: Array[ColorCode] = Array.tabulate(numColors * numColors * 2) { packed =>
+    ColorCode(colors(packed % numColors), colors(packed / numColors % numColors), packed >= numColors * numColors)
+  }
+
+  private def index(telnetColor: TelnetColor): Int = telnetColor match {
+    case TelnetColorDefaultFg => 0
+    case TelnetColorDefaultBg => 1
+    case TelnetColorBlack => 2
+    case TelnetColorRed => 3
+    case TelnetColorGreen => 4
+    case TelnetColorYellow => 5
+    case TelnetColorBlue => 6
+    case TelnetColorMagenta => 7
+    case TelnetColorCyan => 8
+    case TelnetColorWhite => 9
+  }
+
+  def pack(colorCode: ColorCode): Int = {
+    index(colorCode.fg) + index(colorCode.bg) * numColors + (if (colorCode.bold) numColors * numColors else 0)
+  }
+
+  def unpack(packed: Int): ColorCode = codes(packed)
+
+  /**
+    * <p>Packed codes are in the range [0, NumPacked).</p>
+    */
+  val NumPacked: Int = codes.length
+}
+
 object CommandColorCode extends ColorCode(TelnetColorYellow)
 object DefaultColorCode extends ColorCode(TelnetColorDefaultFg, TelnetColorDefaultBg, false)
 object HighlightColorCode extends ColorCode(TelnetColorDefaultBg, TelnetColorDefaultFg, false)
@@ -11,33 +11,55 @@ import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
 import scala.collection.JavaConverters._
-import scala.util.{Failure, Try}
+import scala.util.{Failure, Success, Try}
 
 trait Connector {
   def onConnect(): Unit
   def onDisconnect(): Unit
   def isConnected(): Boolean
   def onCancel(): Unit
-  def read(): Unit
+
+  /**
+    * <p>Read what the socket has, returns the number of bytes read.</p>
+    */
+  def read(): Int
   def write(): Unit
+  def hasPendingWrites: Boolean
   def address: InetSocketAddress
   def setSocketChannel(channel: SocketChannel) : Unit
+  def setShard(shard: SelectorShard) : Unit
   def error(msg: String) : Unit
 }
 
 object Connector {
   val log = Logger(LoggerFactory.getLogger(ConnectionManager.getClass))
+
+  /**
+    * <p>Read into a direct buffer, which saves the JDK a copy out of its own temporary direct buffer on every
+    * read.</p>
+    */
+  val directBuffers: Boolean = System.getProperty("aug.io.Connector.directBuffers", "false").toBoolean
+
+  /**
+    * <p>Most buffers handed to one gathering write, well under the usual IOV_MAX of 1024.</p>
+    */
+  val MaxGather = 256
 }
 
 abstract class AbstractConnection(val address: InetSocketAddress) extends Connector with AutoCloseable {
 
+  import Connector.MaxGather
+
   private val log = Connector.log
   private var channel : SocketChannel = _
   private val connected = new AtomicBoolean(false)
   private val closed = new AtomicBoolean(false)
-  private val in = ByteBuffer.allocate(2<<20)
+  private val in = if (Connector.directBuffers) ByteBuffer.allocateDirect(2<<20) else ByteBuffer.allocate(2<<20)
   private val queue = new ConcurrentLinkedQueue[Array[Byte]]()
-  private var out : Option[ByteBuffer] = None
+  private val pending = new java.util.ArrayDeque[ByteBuffer]()
+  private val gather = new Array[ByteBuffer](MaxGather)
+  @volatile private var shard : SelectorShard = _
+  @volatile private var recorder : Option[SessionRecorder] = None
 
   def isClosed: Boolean = closed.get
   override def isConnected: Boolean = channel.isConnected
@@ -46,6 +68,8 @@ abstract class AbstractConnection(val address: InetSocketAddress) extends Connec
     if(!closed.compareAndSet(false, true)) return
 
     queue.clear()
+    if (shard != null) shard.unregister()
+    recorder.foreach(_.close())
     Try {
       if(channel != null) channel.close()
     } match {
@@ -95,16 +119,30 @@ abstract class AbstractConnection(val address: InetSocketAddress) extends Connec
   def send(msg : Array[Byte]) {
     if (!isClosed) {
       queue.add(msg)
+      if (channel != null && shard != null) shard.requestWrite(channel)
     }
   }
 
   def send(s: String) : Unit = send(s.getBytes())
 
+  override def hasPendingWrites: Boolean = !queue.isEmpty || !pending.isEmpty
+
   override def setSocketChannel(channel: SocketChannel): Unit = this.channel = channel
 
-  protected def handleIncoming(bytes: Array[Byte]) : Unit
+  override def setShard(shard: SelectorShard): Unit = this.shard = shard
+
+  /**
+    * <p>Record everything read from the socket from now on, as it was read, before any decoding.</p>
+    */
+  def record(recorder: SessionRecorder): Unit = this.recorder = Some(recorder)
+
+  /**
+    * <p>Handle bytes read from the socket, between the buffer's position and limit.  The buffer is reused for the
+    * next read, so implementations must consume or copy everything they need before returning.</p>
+    */
+  protected def handleIncoming(buffer: ByteBuffer) : Unit
 
-  override def read() : Unit = {
+  override def read() : Int = {
     Try {
       in.clear
 
@@ -114,41 +152,63 @@ abstract class AbstractConnection(val address: InetSocketAddress) extends Connec
 
       in.flip
 
-      if (!in.hasRemaining) return
-
-      val copy = new Array[Byte](in.limit)
-      System.arraycopy(in.array(), 0, copy, 0, copy.length)
-      handleIncoming(copy)
+      if (in.hasRemaining) {
+        recorder.foreach(_.record(in))
+        handleIncoming(in)
+      }
+      read
     } match {
       case Failure(e: IOException) =>
         log.info("connection reset by peer")
         onDisconnect()
         close()
+        0
 
       case Failure(e) =>
         log.error("error on read, closing", e)
         onDisconnect()
         close()
+        0
 
-      case _ =>
+      case Success(read) => read
     }
   }
 
+  /**
+    * <p>Write everything queued with one gathering write per pass, so commands sent together go out in as few
+    * segments as the socket allows.  Stops when the socket can't take more, the rest is written once the selector
+    * says it's writable again.</p>
+    */
   override def write() : Unit = {
     Try {
-      while(queue.size() > 0) {
-        if(out.isEmpty || !out.get.hasRemaining) {
+      var full = false
 
-          out = Some(ByteBuffer.wrap(queue.poll))
+      while (!full && hasPendingWrites) {
+        var msg = queue.poll()
+        while (msg != null) {
+          pending.add(ByteBuffer.wrap(msg))
+          msg = queue.poll()
+        }
 
-          log.trace("sending: {}", new String(out.get.array))
+        val count = Math.min(pending.size, MaxGather)
+        val iterator = pending.iterator()
+        var i = 0
+        while (i < count) {
+          gather(i) = iterator.next()
+          i += 1
         }
 
-        val written = channel.write(out.get)
+        val written = channel.write(gather, 0, count)
+        while (i > 0) {
+          i -= 1
+          gather(i) = null
+        }
 
         log.trace(s"$channel wrote $written bytes")
 
-        if(written == 0) return
+        while (!pending.isEmpty && !pending.peek.hasRemaining) pending.poll()
+
+        if (written == 0) full = true
       }
     } match {
       case Failure(e) =>
@@ -0,0 +1,78 @@
+package aug.io
+
+import java.nio.charset.StandardCharsets
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+import aug.script.framework.GmcpMessage
+
+object Gmcp {
+
+  /**
+    * <p>Split a GMCP payload at the first whitespace into package name and data.  Only the package name is decoded,
+    * the data is copied out of the decoder's buffer once and left as bytes.</p>
+    */
+  def parse(payload: Array[Byte], length: Int): GmcpMessage = {
+    var end = 0
+    while (end < length && !isSpace(payload(end))) end += 1
+
+    var start = end
+    while (start < length && isSpace(payload(start))) start += 1
+
+    new GmcpMessage(new String(payload, 0, end, StandardCharsets.UTF_8),
+      java.util.Arrays.copyOfRange(payload, start, length))
+  }
+
+  private def isSpace(b: Byte): Boolean = b == ' ' || b == '\n' || b == '\r' || b == '\t'
+
+  private def key(packageName: String): String = packageName.toLowerCase(Locale.ROOT)
+
+  /** <p>A subscription written as "char." means the same package as "char".</p> */
+  private def prefixKey(packagePrefix: String): String = key(packagePrefix).stripSuffix(".")
+}
+
+/**
+  * <p>Routes GMCP messages for a profile.  Every message updates a cache holding the latest message per package,
+  * which can be read from any thread.  Only messages in packages the client subscribed to are passed on to it; a
+  * client with no subscriptions gets everything, as before subscriptions existed.</p>
+  *
+  * <p>Thread safe.  Messages arrive on the telnet thread, subscriptions are changed by the client.</p>
+  */
+class Gmcp {
+  import Gmcp.{key, prefixKey}
+
+  @volatile private var subscriptions = Set.empty[String]
+  private val latest = new ConcurrentHashMap[String, GmcpMessage]()
+
+  def subscribe(packagePrefix: String): Unit = synchronized {
+    subscriptions += prefixKey(packagePrefix)
+  }
+
+  def unsubscribe(packagePrefix: String): Unit = synchronized {
+    subscriptions -= prefixKey(packagePrefix)
+  }
+
+  def clearSubscriptions(): Unit = synchronized {
+    subscriptions = Set.empty
+  }
+
+  def get(packageName: String): Option[GmcpMessage] = Option(latest.get(key(packageName)))
+
+  def isSubscribed(packageName: String): Boolean = {
+    val subs = subscriptions
+    subs.isEmpty || {
+      val pkg = key(packageName)
+      subs.exists(prefix => pkg == prefix || (pkg.startsWith(prefix) && pkg.charAt(prefix.length) == '.'))
+    }
+  }
+
+  /**
+    * <p>Cache the message.  Returns true if the client should receive it.</p>
+    */
+  def update(message: GmcpMessage): Boolean = {
+    latest.put(key(message.packageName), message)
+    isSubscribed(message.packageName)
+  }
+
+  def clear(): Unit = latest.clear()
+}
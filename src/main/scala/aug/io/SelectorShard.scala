@@ -0,0 +1,272 @@
+package aug.io
+
+import java.io.IOException
+import java.lang.management.ManagementFactory
+import java.nio.channels.{SelectionKey, Selector, ServerSocketChannel, SocketChannel}
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+import javax.management.ObjectName
+
+import aug.misc.Meter
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.jdk.CollectionConverters._
+import scala.util.{Failure, Try}
+
+case class Attachment(connector: Connector, channel: SocketChannel)
+
+/**
+  * <p>The JMX view of a {@link SelectorShard}.</p>
+  */
+trait SelectorShardMBean {
+  def getConnections: Int
+  def getBytesRead: Long
+  def getBytesPerSecond: Double
+
+  /**
+    * <p>Percent of the last second the thread spent reading and decoding rather than waiting in select.</p>
+    */
+  def getBusyPercent: Double
+}
+
+object SelectorShard {
+  val log: Logger = Logger(LoggerFactory.getLogger(SelectorShard.getClass))
+
+  private def configure(channel: SocketChannel): Unit = {
+    channel.configureBlocking(false)
+    channel.socket().setSendBufferSize(0x100000) // 1Mb
+    channel.socket().setReceiveBufferSize(0x100000) // 1Mb
+    channel.socket().setKeepAlive(true)
+    channel.socket().setReuseAddress(true)
+    channel.socket().setSoLinger(false, 0)
+    channel.socket().setSoTimeout(0)
+    channel.socket().setTcpNoDelay(true)
+  }
+}
+
+/**
+  * <p>One selector and the thread that runs it.  Reads, MCCP inflating and telnet decoding of every connection on
+  * the shard happen on its thread, so connections on other shards aren't held up by a busy one.</p>
+  */
+class SelectorShard(val index: Int) extends SelectorShardMBean with AutoCloseable with Runnable {
+  import SelectorShard._
+
+  private val closed = new AtomicBoolean(false)
+  private val selector : Selector = Selector.open
+  private val thread	= new Thread(this, s"TelnetManager-$index")
+  private val tasks = new ConcurrentLinkedQueue[Runnable]()
+  private val connections = new AtomicInteger()
+  private val bytesRead = new Meter
+  private val busy = new Meter
+
+  private val objectName = new ObjectName(s"aug:type=SelectorShard,name=$index")
+
+  Try(ManagementFactory.getPlatformMBeanServer.registerMBean(this, objectName)) match {
+    case Failure(e) => log.warn(s"failed to register shard $index", e)
+    case _ =>
+  }
+
+  override def getConnections: Int = connections.get
+  override def getBytesRead: Long = bytesRead.count
+  override def getBytesPerSecond: Double = bytesRead.rate
+  override def getBusyPercent: Double = busy.rate / 1e7
+
+  def register(connector: Connector) : Unit = {
+    val channel = SocketChannel.open()
+    configure(channel)
+
+    connector.setSocketChannel(channel)
+    connector.setShard(this)
+    connections.incrementAndGet()
+
+    val connected = channel.connect(connector.address)
+
+    onSelectorThread {
+      Try {
+        if (connected) {
+          onConnect(connector, channel)
+        } else {
+          channel.register(selector, SelectionKey.OP_CONNECT, Attachment(connector, channel))
+        }
+      } match {
+        case Failure(e) =>
+          log.error("failed to register connector", e)
+          connector.error(e.getMessage)
+          connector.onCancel()
+
+        case _ =>
+      }
+    }
+
+    log.debug("connector registered on shard {}: {}", index, channel)
+  }
+
+  /**
+    * <p>Called once by a connection registered here when it closes.</p>
+    */
+  def unregister(): Unit = connections.decrementAndGet()
+
+  private def onConnect(connector: Connector, channel: SocketChannel): Unit = {
+    log.info(s"connected to ${channel.getRemoteAddress} on shard $index")
+    connector.onConnect()
+    channel.register(selector, interestOps(connector), Attachment(connector, channel))
+  }
+
+  private def interestOps(connector: Connector): Int = {
+    if (connector.hasPendingWrites) SelectionKey.OP_READ | SelectionKey.OP_WRITE else SelectionKey.OP_READ
+  }
+
+  /**
+    * <p>Called by a connection after it queues outbound data.  Write interest is only added to the key while
+    * there is data to write, so the selector can block in between.</p>
+    */
+  def requestWrite(channel: SocketChannel): Unit = {
+    onSelectorThread {
+      Option(channel.keyFor(selector)).filter(k => k.isValid && channel.isConnected).foreach { key =>
+        key.interestOps(key.interestOps | SelectionKey.OP_WRITE)
+      }
+    }
+  }
+
+  /**
+    * <p>Run a task on the selector thread, waking it up if it is blocked in select.  Registrations and interest
+    * changes are done this way so no other thread touches the selector while it's selecting.</p>
+    */
+  private def onSelectorThread(f: => Unit): Unit = {
+    tasks.add(() => f)
+    selector.wakeup()
+  }
+
+  @tailrec
+  private def runTasks(): Unit = {
+    val task = tasks.poll()
+    if (task != null) {
+      Try(task.run()) match {
+        case Failure(e) => log.error("selector task failed", e)
+        case _ =>
+      }
+      runTasks()
+    }
+  }
+
+  def register(server: Server): Unit = {
+    val channel = ServerSocketChannel.open()
+    channel.configureBlocking(false)
+    channel.socket().setReuseAddress(true)
+    channel.socket.setSoTimeout(0)
+    channel.socket.bind(server.address)
+
+    server.setServerSocketChannel(channel)
+
+    onSelectorThread(channel.register(selector, SelectionKey.OP_ACCEPT, server))
+
+    log.debug("server registered on shard {}: {}", index, server)
+  }
+
+  def start() : Unit = thread.start()
+
+  override def run() : Unit = {
+    while (!closed.get && selector.isOpen) {
+      try {
+        selector.select()
+        val start = System.nanoTime
+        runTasks()
+        processKeys()
+        busy.mark(System.nanoTime - start)
+      } catch {
+        case e: Throwable => log.error("exception caught during selection", e)
+      }
+    }
+    selector.close()
+  }
+
+  private def processKeys(): Unit = {
+    val selected = selector.selectedKeys
+    selected.asScala.foreach(processKey)
+    selected.clear()
+  }
+
+  private def connect(key: SelectionKey, connector: Connector, channel: SocketChannel): Unit = {
+    try {
+      if (!channel.isConnected && channel.finishConnect()) {
+        onConnect(connector, channel)
+      }
+    } catch {
+      case e: Throwable =>
+        log.error(s"error trying to connect to ${channel.getRemoteAddress}", e)
+        key.cancel()
+        connector.onDisconnect()
+    }
+  }
+
+  private def processClient(key: SelectionKey, connector: Connector, channel: SocketChannel): Unit = {
+    if (!key.isValid) {
+      connector.onCancel()
+      key.cancel()
+    } else {
+      if (key.isConnectable) {
+        connect(key, connector, channel)
+      }
+
+      if (key.isValid && key.isReadable) {
+        read(key, connector)
+      }
+
+      if (key.isValid && key.isWritable) {
+        write(key, connector)
+      }
+    }
+  }
+
+  private def write(key: SelectionKey, connector: Connector): Unit = {
+    Try {
+      connector.write()
+      if (key.isValid && !connector.hasPendingWrites) {
+        key.interestOps(key.interestOps & ~SelectionKey.OP_WRITE)
+      }
+    } match {
+      case Failure(e) =>
+        log.info("closing {}", key.attachment)
+        key.cancel()
+
+      case _ =>
+    }
+  }
+
+  private def read(key: SelectionKey, connector: Connector): Unit = {
+    Try {
+      bytesRead.mark(connector.read())
+    } match {
+      case Failure(e) =>
+        log.info("closing {}", key.attachment)
+        key.cancel()
+
+      case _ =>
+    }
+  }
+
+  private def processServer(key: SelectionKey, server: Server) = {
+    if (key.isAcceptable) {
+      server.accept()
+    }
+  }
+
+  private def processKey(key : SelectionKey): Unit = {
+    key.attachment() match {
+      case Attachment(connector, channel) => processClient(key, connector, channel)
+      case server: Server => processServer(key, server)
+    }
+  }
+
+  override def close(): Unit = {
+    if (closed.compareAndSet(false,true)) {
+      Try(ManagementFactory.getPlatformMBeanServer.unregisterMBean(objectName))
+      selector.wakeup()
+      thread.interrupt()
+      thread.join(10 * 1000)
+      if (thread.isAlive) throw new IOException(s"join of shard $index timed out")
+    }
+  }
+}
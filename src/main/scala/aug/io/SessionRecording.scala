@@ -0,0 +1,244 @@
+package aug.io
+
+import java.io._
+import java.net.{InetAddress, InetSocketAddress}
+import java.nio.ByteBuffer
+import java.nio.channels.{ServerSocketChannel, SocketChannel}
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import aug.misc.Util.closeQuietly
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.util.{Failure, Success, Try}
+
+/**
+  * <p>Recordings hold the bytes a connection read from its socket, exactly as read, so MCCP compressed data stays
+  * compressed.  The file starts with the magic number, a version byte and the start time in epoch millis, then has
+  * one record per read: the nanoseconds since the previous read and the length as varints, then the bytes.</p>
+  */
+object SessionRecording {
+  val log = Logger(LoggerFactory.getLogger(SessionRecording.getClass))
+
+  val Magic = 0x41554752 // AUGR
+  val Version = 1
+
+  private[io] val FlushNanos = TimeUnit.SECONDS.toNanos(1)
+
+  /**
+    * <p>One read, nanos after the previous one.</p>
+    */
+  case class Chunk(nanos: Long, data: Array[Byte])
+
+  /**
+    * <p>Hand every chunk of the recording to f in order, pausing between chunks as long as the recording did if
+    * realTime.  Returns the number of bytes replayed.</p>
+    */
+  def replay(file: File, realTime: Boolean)(f: ByteBuffer => Unit): Long = {
+    val reader = new SessionReader(file)
+    try {
+      var bytes = 0L
+      var due = System.nanoTime
+
+      reader.foreach { chunk =>
+        if (realTime) {
+          due += chunk.nanos
+          val wait = due - System.nanoTime
+          if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait)
+        }
+
+        f(ByteBuffer.wrap(chunk.data))
+        bytes += chunk.data.length
+      }
+
+      bytes
+    } finally reader.close()
+  }
+}
+
+/**
+  * <p>Records what a connection reads to a file.  Called on the selector thread, so writes go through a buffer
+  * that's flushed about once a second.  A failed write only stops the recording.</p>
+  */
+class SessionRecorder(val file: File) extends AutoCloseable {
+  import SessionRecording._
+
+  private val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))
+  private val scratch = new Array[Byte](1 << 13)
+  private var last = System.nanoTime
+  private var lastFlush = last
+  private var closed = false
+
+  out.writeInt(Magic)
+  out.writeByte(Version)
+  out.writeLong(System.currentTimeMillis)
+
+  private def writeVarLong(value: Long): Unit = {
+    var v = value
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte(((v & 0x7F) | 0x80).toInt)
+      v >>>= 7
+    }
+    out.writeByte(v.toInt)
+  }
+
+  /**
+    * <p>Record the bytes between the buffer's position and limit, without moving them.</p>
+    */
+  def record(buffer: ByteBuffer): Unit = synchronized {
+    if (!closed) {
+      Try {
+        val now = System.nanoTime
+        writeVarLong(now - last)
+        writeVarLong(buffer.remaining)
+        last = now
+
+        if (buffer.hasArray) {
+          out.write(buffer.array, buffer.arrayOffset + buffer.position(), buffer.remaining)
+        } else {
+          val dup = buffer.duplicate()
+          while (dup.hasRemaining) {
+            val n = Math.min(dup.remaining, scratch.length)
+            dup.get(scratch, 0, n)
+            out.write(scratch, 0, n)
+          }
+        }
+
+        if (now - lastFlush >= FlushNanos) {
+          out.flush()
+          lastFlush = now
+        }
+      } match {
+        case Failure(e) =>
+          log.error(s"failed to record to $file, no longer recording", e)
+          close()
+        case Success(_) =>
+      }
+    }
+  }
+
+  override def close(): Unit = synchronized {
+    if (!closed) {
+      closed = true
+      closeQuietly(out.close())
+    }
+  }
+}
+
+/**
+  * <p>Reads the chunks of a recording in order.</p>
+  */
+class SessionReader(file: File) extends Iterator[SessionRecording.Chunk] with AutoCloseable {
+  import SessionRecording._
+
+  private val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))
+
+  if (in.readInt() != Magic) {
+    in.close()
+    throw new IOException(s"$file is not a session recording")
+  }
+
+  private val version = in.readByte()
+  if (version != Version) {
+    in.close()
+    throw new IOException(s"$file has unsupported recording version $version")
+  }
+
+  /**
+    * <p>When the recording started, in epoch millis.</p>
+    */
+  val started: Long = in.readLong()
+
+  private var nextChunk: Option[Chunk] = readChunk()
+
+  private def readVarLong(): Long = {
+    var value = 0L
+    var shift = 0
+    var b = in.readByte()
+    while ((b & 0x80) != 0) {
+      value |= (b & 0x7FL) << shift
+      shift += 7
+      b = in.readByte()
+    }
+    value | (b.toLong << shift)
+  }
+
+  private def readChunk(): Option[Chunk] = {
+    Try {
+      val nanos = readVarLong()
+      val data = new Array[Byte](readVarLong().toInt)
+      in.readFully(data)
+      Chunk(nanos, data)
+    } match {
+      case Success(chunk) => Some(chunk)
+      case Failure(_: EOFException) => None
+      case Failure(e) => throw e
+    }
+  }
+
+  override def hasNext: Boolean = nextChunk.isDefined
+
+  override def next(): Chunk = {
+    val chunk = nextChunk.getOrElse(throw new NoSuchElementException("end of recording"))
+    nextChunk = readChunk()
+    chunk
+  }
+
+  override def close(): Unit = in.close()
+}
+
+/**
+  * <p>A loopback telnet server standing in for the real one: serves a recording to every connection, at the
+  * recorded pace or as fast as the socket takes it, then closes the connection.  Register it with
+  * ConnectionManager, then connect to port.</p>
+  */
+class ReplayServer(recording: File, realTime: Boolean) extends Server with AutoCloseable {
+  import SessionRecording.log
+
+  override val address = new InetSocketAddress(InetAddress.getLoopbackAddress, 0)
+
+  private var channel: ServerSocketChannel = _
+  private val served = new CountDownLatch(1)
+  @volatile private var firstServed = 0L
+
+  override def setServerSocketChannel(channel: ServerSocketChannel): Unit = this.channel = channel
+
+  def port: Int = channel.socket.getLocalPort
+
+  override def accept(): Unit = {
+    Option(channel.accept()).foreach { client =>
+      val thread = new Thread(() => serve(client), s"ReplayServer: $port")
+      thread.setDaemon(true)
+      thread.start()
+    }
+  }
+
+  private def serve(client: SocketChannel): Unit = {
+    Try {
+      client.configureBlocking(true)
+      SessionRecording.replay(recording, realTime) { buffer =>
+        while (buffer.hasRemaining) client.write(buffer)
+      }
+    } match {
+      case Failure(e) => log.error(s"failed to replay $recording", e)
+      case Success(bytes) =>
+        log.info(s"replayed $bytes bytes of $recording")
+        if (served.getCount > 0) firstServed = bytes
+    }
+
+    closeQuietly(client.close())
+    served.countDown()
+  }
+
+  /**
+    * <p>Wait for the first connection to be served the whole recording.</p>
+    */
+  def awaitServed(timeout: Long, unit: TimeUnit): Boolean = served.await(timeout, unit)
+
+  /**
+    * <p>Bytes served to the first connection, once served.</p>
+    */
+  def bytesServed: Long = firstServed
+
+  override def close(): Unit = if (channel != null) closeQuietly(channel.close())
+}
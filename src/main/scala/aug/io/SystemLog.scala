@@ -5,7 +5,9 @@ import java.util.Date
 
 import aug.gui.{SystemPanel, TabbedPane}
 import aug.script.framework.tools.ScalaUtils
+import com.typesafe.scalalogging.Logger
 import org.apache.commons.lang.exception.ExceptionUtils
+import org.slf4j.LoggerFactory
 
 trait SystemLogInterface {
   def raw(msg: String): Unit
@@ -14,7 +16,7 @@ trait SystemLogInterface {
   def error(msg: String, throwable: Throwable): Unit
 }
 
-class PrefixSystemLog(prefix: String, systemLog: SystemLog) extends SystemLogInterface {
+class PrefixSystemLog(prefix: String, systemLog: SystemLogInterface) extends SystemLogInterface {
   override def info(msg: String): Unit = systemLog.info(s"$prefix$msg")
   override def error(msg: String): Unit = systemLog.error(s"$prefix$msg")
   override def error(msg: String, throwable: Throwable): Unit = systemLog.error(s"$prefix$msg", throwable)
@@ -31,7 +33,7 @@ class SystemLog(systemPanel: SystemPanel, tabbedPane: TabbedPane) extends System
       lineNum += 1
     }
 
-    systemPanel.repaint()
+    systemPanel.textArea.requestRepaint()
   }
 
   override def info(msg: String): Unit = log("INFO", "37", msg)
@@ -51,3 +53,15 @@ class SystemLog(systemPanel: SystemPanel, tabbedPane: TabbedPane) extends System
     raw(txt)
   }
 }
+
+/**
+  * <p>System log for running without a UI, written without colors to the application log.</p>
+  */
+class HeadlessSystemLog extends SystemLogInterface {
+  private val log = Logger(LoggerFactory.getLogger("aug.system"))
+
+  override def raw(msg: String): Unit = log.info(ScalaUtils.removeColors(msg))
+  override def info(msg: String): Unit = log.info(msg)
+  override def error(msg: String): Unit = log.error(msg)
+  override def error(msg: String, throwable: Throwable): Unit = log.error(msg, throwable)
+}
@@ -1,23 +1,18 @@
 package aug.io
 
+import java.io.File
 import java.net.InetSocketAddress
-import java.nio.charset.Charset
+import java.nio.charset.{Charset, CodingErrorAction, StandardCharsets}
+import java.text.SimpleDateFormat
+import java.util.Date
 import java.util.concurrent.atomic.AtomicLong
-import java.util.zip.Inflater
 import aug.profile._
 import aug.misc.Util
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
-import java.nio.ByteBuffer
-import scala.util.{Failure, Try}
-
-sealed trait TelnetState
-
-case object Stream extends TelnetState
-case object Command extends TelnetState
-case object Option extends TelnetState
-case object SubNegotiation extends TelnetState
+import java.nio.{ByteBuffer, CharBuffer}
+import scala.util.{Failure, Success, Try}
 
 sealed abstract class TelnetCommand(val code: Byte, val text: String)
 
@@ -49,30 +44,19 @@ case class OptionUnknown(unknownCode: Byte) extends TelnetOption(unknownCode,"UN
 object Telnet {
   private val log = Logger(LoggerFactory.getLogger(Telnet.getClass))
 
-  private val telnetCommands : Map[Byte,TelnetCommand] = Map(
-    TelnetEOR.code -> TelnetEOR,
-    TelnetEsc.code -> TelnetEsc,
-    TelnetSE.code -> TelnetSE,
-    TelnetGA.code -> TelnetGA,
-    TelnetSB.code -> TelnetSB,
-    TelnetWill.code -> TelnetWill,
-    TelnetWont.code -> TelnetWont,
-    TelnetDo.code -> TelnetDo,
-    TelnetDont.code -> TelnetDont,
-    TelnetIac.code -> TelnetIac)
-
-  private val options : Map[Byte, TelnetOption] = Map(
-    OptionEcho.code -> OptionEcho,
-    OptionType.code -> OptionType,
-    OptionWinSize.code -> OptionWinSize,
-    OptionMccp1.code -> OptionMccp1,
-    OptionMccp2.code -> OptionMccp2,
-    OptionAard102.code -> OptionAard102,
-    OptionAtcp.code -> OptionAtcp,
-    OptionGmcp.code -> OptionGmcp
-  )
-
-  private val CHARSET			= Charset.forName("US-ASCII")
+  private val telnetCommands : Array[TelnetCommand] = {
+    val commands = Array.tabulate[TelnetCommand](256)(i => TelnetUnknown(i.toByte))
+    List(TelnetEOR, TelnetEsc, TelnetSE, TelnetGA, TelnetSB, TelnetWill, TelnetWont, TelnetDo, TelnetDont,
+      TelnetIac).foreach(c => commands(c.code & 0xFF) = c)
+    commands
+  }
+
+  private val options : Array[TelnetOption] = {
+    val options = Array.tabulate[TelnetOption](256)(i => OptionUnknown(i.toByte))
+    List(OptionEcho, OptionType, OptionWinSize, OptionMccp1, OptionMccp2, OptionAard102, OptionAtcp, OptionGmcp)
+      .foreach(o => options(o.code & 0xFF) = o)
+    options
+  }
 
   private val COLOR_DEFAULT	= 0
 
@@ -84,24 +68,36 @@ object Telnet {
 
 class Telnet(profile: Profile, val profileConfig: ProfileConfig) extends
   AbstractConnection(new InetSocketAddress(profileConfig.telnetConfig.host,
-    profileConfig.telnetConfig.port)) {
+    profileConfig.telnetConfig.port)) with TelnetHandler {
   private val log = Telnet.log
 
   val url: String = profileConfig.telnetConfig.host
   val port: Int = profileConfig.telnetConfig.port
   val id: Long = Telnet.idGenerator.incrementAndGet()
 
-  private val inflater = new Inflater()
-  private val inflateBuffer = ByteBuffer.allocate(1<<16)
+  private val decoder = new TelnetDecoder(this)
   private val postBuffer: ByteBuffer = ByteBuffer.allocate(1<<16)
 
-  private var compressed = false
-  private var state : TelnetState = Stream
-  private var command : TelnetCommand = TelnetUnknown(0)
-  private var option : TelnetOption = OptionUnknown(0)
-  private var subMessage = new StringBuilder
-  private var zipinput : Array[Byte] = _
-  private var rawBuffer = ByteBuffer.allocate(1<<16)
+  val charset: Charset = Try(Charset.forName(profileConfig.telnetConfig.charset)).getOrElse {
+    profile.slog.error(s"unknown charset ${profileConfig.telnetConfig.charset}, using UTF-8")
+    StandardCharsets.UTF_8
+  }
+
+  // decodes postBuffer, carrying partial multi-byte sequences over to the next post
+  private val charDecoder = charset.newDecoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+  private val charBuffer = CharBuffer.allocate(Math.ceil(postBuffer.capacity * charDecoder.maxCharsPerByte).toInt)
+
+  if (profileConfig.logConfig.recordSession) {
+    val dateString = new SimpleDateFormat("yyyy.MM.dd_kk.mm.ss").format(new Date())
+    Try(new SessionRecorder(new File(profile.logDir, s"session.$dateString-$id.rec"))) match {
+      case Success(recorder) =>
+        record(recorder)
+        profile.slog.info(s"recording session to ${recorder.file}")
+      case Failure(e) => profile.slog.error(s"failed to record session: ${e.getMessage}")
+    }
+  }
 
   override def close(): Unit = {
     super.close()
@@ -122,132 +118,84 @@ class Telnet(profile: Profile, val profileConfig: ProfileConfig) extends
     if (!isClosed) profile.offer(TelnetConnect(id, url, port))
   }
 
-  private def handleByte(c: Byte): Unit = {
-    val v : Byte = (0x00FF & c).toByte
-
-    if (!postBuffer.hasRemaining) post()
-
-    state match {
-
-      case Stream =>
-        if(TelnetIac.code == v) {
-          state = Command
-        } else if('\r' != c) postBuffer.put(c)
-
-      case Command =>
-        command = Telnet.telnetCommands.getOrElse(v, TelnetUnknown(v))
-
-        command match {
-          case TelnetSE =>
-            state = Stream
-            handleSubNegotiation()
-
-          case TelnetDo | TelnetDont | TelnetWill | TelnetWont | TelnetSB =>
-            state = Option
-
-          case TelnetUnknown(_) =>
-            log.info(s"unknown telnet command: $v")
-            profile.slog.info(s"unknown telnet command: $v")
+  override def handleIncoming(buffer: ByteBuffer): Unit = {
+    val bytes = buffer.remaining
+    log.trace("{} incoming bytes", bytes)
 
-          case TelnetGA =>
-            post(true)
-            state = Stream
+    // counted once decoded, so every byte counted has been offered to the profile
+    try {
+      profile.metrics.decode.time {
+        decoder.decode(buffer)
+        post()
+      }
+    } finally profile.metrics.bytesRead.mark(bytes)
+  }
 
-          case all =>
-            state = Stream
-            log.error(s"unhandled command $all")
-        }
+  override def onInflate(nanos: Long): Unit = profile.metrics.inflate.recordNanos(nanos)
 
-      case Option =>
-        option = Telnet.options.getOrElse(v, OptionUnknown(v))
-        handleOption()
+  override def onText(text: ByteBuffer): Unit = {
+    val limit = text.limit()
 
-      case SubNegotiation =>
-        if(TelnetIac.code == v) {
-          state = Command
-        } else subMessage.append(c.toChar)
+    while (text.hasRemaining) {
+      if (!postBuffer.hasRemaining) post()
+      text.limit(text.position() + Math.min(text.remaining, postBuffer.remaining))
+      postBuffer.put(text)
+      text.limit(limit)
     }
   }
 
-  private def handleDoOption(): Unit = {
+  override def onGoAhead(): Unit = post(true)
+
+  override def onNegotiation(code: Byte, optionCode: Byte): Unit = {
+    val command = Telnet.telnetCommands(code & 0xFF)
+    val option = Telnet.options(optionCode & 0xFF)
     log.debug("recv: IAC {} {}", command.text, option.text)
-    option match {
-      case OptionType => send(TelnetWill, OptionType)
-      case ou: OptionUnknown => send(TelnetWont, ou)
+
+    command match {
+      case TelnetWill => handleWillOption(option)
+      case TelnetDo => handleDoOption(option)
       case _ =>
     }
-
-  }
-
-  override def handleIncoming(bytes: Array[Byte]): Unit = {
-    log.trace("{} incoming bytes", bytes.length)
-
-    inflate(bytes)
-
-    handleIncomingLoop()
-
-    post()
   }
 
-  private def handleIncomingLoop(): Unit = {
-    while(true) {
-      while(rawBuffer.hasRemaining) {
-        handleByte(rawBuffer.get)
-      }
-
-      if(!compressed || inflater.needsInput) {
-        log.trace("breaking byte loop")
-        return
-      }
-
-      readRaw()
-    }
+  override def onUnknownCommand(code: Byte): Unit = {
+    val v = code & 0xFF
+    log.info(s"unknown telnet command: $v")
+    profile.slog.info(s"unknown telnet command: $v")
   }
 
-  private def handleOption(): Unit = {
-    command match {
-      case TelnetSB =>
-        state = SubNegotiation
-
-      case TelnetWill =>
-        state = Stream
-        handleWillOption()
-
-      case TelnetDo =>
-        state = Stream
-        handleDoOption()
-
-      case _ => state = Stream
+  private def handleDoOption(option: TelnetOption): Unit = {
+    option match {
+      case OptionType => send(TelnetWill, OptionType)
+      case ou: OptionUnknown => send(TelnetWont, ou)
+      case _ =>
     }
   }
 
-  private def handleSubNegotiation(): Unit = {
-    val sm = subMessage.toString
-    subMessage = new StringBuilder
-    log.trace("subMessage {}", sm)
+  override def onSubNegotiation(optionCode: Byte, payload: Array[Byte], length: Int): Unit = {
+    val option = Telnet.options(optionCode & 0xFF)
+    log.trace("subMessage {} {} bytes", option.text, length)
 
     option match {
       case OptionType =>
-        log.debug("recv: IAC {} {}",command.text, option.text)
-        val i = sm.charAt(0)
-        if(Telnet.TELQUAL_SEND == i) {
+        log.debug("recv: IAC {} {}", TelnetSB.text, option.text)
+        if(length > 0 && Telnet.TELQUAL_SEND == payload(0)) {
           send(OptionType, Telnet.TELQUAL_IS+"augustMC")
         }
 
       case OptionMccp2 =>
         log.trace("starting compression")
-        startCompression()
 
       case OptionGmcp =>
-        log.trace(s"recv gmcp: $sm")
-        profile.offer(TelnetGMCP(sm))
+        val message = Gmcp.parse(payload, length)
+        log.trace(s"recv gmcp: ${message.packageName}")
+        if (profile.gmcp.update(message)) profile.offer(TelnetGMCP(message))
 
       case _ =>
     }
   }
 
-  private def handleWillOption(): Unit = {
-    log.debug("recv: IAC {} {}", command.text,option.text)
+  private def handleWillOption(option: TelnetOption): Unit = {
     option match {
       case OptionEcho => send(TelnetDo ,OptionEcho)
       case OptionMccp2 =>
@@ -271,52 +219,22 @@ class Telnet(profile: Profile, val profileConfig: ProfileConfig) extends
 
   }
 
-  private def inflate(bytes: Array[Byte]): Unit = {
-    if (!compressed) {
-      rawBuffer = ByteBuffer.wrap(bytes)
-    } else {
-      zipinput = Util.concatenate(zipinput,bytes)
-      readRaw()
-    }
-  }
-
   private def post(withGA: Boolean = false): Unit = {
     if (postBuffer.position() == 0 && !withGA) return
 
-    val msg = new String(postBuffer.array, 0, postBuffer.position())
+    postBuffer.flip()
+    charBuffer.clear()
+    charDecoder.decode(postBuffer, charBuffer, false)
+    postBuffer.compact()
+    charBuffer.flip()
 
-    profile.offer(TelnetRecv(msg, withGA))
-    postBuffer.position(0)
-  }
-
-  private def readRaw(): Unit = {
-    log.trace("zipinput.length == {}",zipinput.length)
-
-    inflater.setInput(zipinput)
-
-    if(inflater.needsInput) return
-
-    inflateBuffer.clear()
-
-    Try {
-      val read = inflater.inflate(inflateBuffer.array)
-      inflateBuffer.limit(read)
-      rawBuffer = inflateBuffer.slice
-    } match {
-      case Failure(e) =>
-        log.error("failed on inflate",e)
-        close()
-        return
-
-      case _ =>
+    if (charBuffer.hasRemaining || withGA) {
+      profile.offer(TelnetRecv(charBuffer.toString, withGA))
     }
-
-    val remaining = inflater.getRemaining
-    zipinput = Util.right(zipinput,remaining)
-
-    log.trace("readRaw: {}",remaining)
   }
 
+  override def send(s: String): Unit = send(s.getBytes(charset))
+
   def send(command: TelnetCommand, option: TelnetOption): Unit = {
     log.debug("send: IAC {} {}", command.text, option.text)
     send(constructCommand(command, option))
@@ -327,18 +245,7 @@ class Telnet(profile: Profile, val profileConfig: ProfileConfig) extends
     val stop : Array[Byte] = Array(TelnetIac.code, TelnetSE.code)
     log.info(s"sending $option: $message")
 
-    send(Util.concatenate(cmd, message.getBytes, stop))
-  }
-
-  private def startCompression() : Unit = {
-    compressed = true
-    zipinput = new Array[Byte](rawBuffer.remaining)
-    System.arraycopy(rawBuffer.array, rawBuffer.position, zipinput, 0, zipinput.length)
-    log.debug("starting MCCP compression, zipinput length == {}", zipinput.length)
-
-    rawBuffer = ByteBuffer.allocate(0)
-
-    readRaw()
+    send(Util.concatenate(cmd, message.getBytes(StandardCharsets.UTF_8), stop))
   }
 
   override def error(msg: String): Unit = {
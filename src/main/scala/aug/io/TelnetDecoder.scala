@@ -0,0 +1,321 @@
+package aug.io
+
+import java.nio.ByteBuffer
+import java.util.zip.Inflater
+
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.annotation.{switch, tailrec}
+
+/**
+  * <p>Receives the protocol events found by {@link TelnetDecoder}.  Buffers and arrays passed to the handler are
+  * reused by the decoder and are only valid until the call returns.</p>
+  */
+trait TelnetHandler {
+
+  /**
+    * <p>Plain stream bytes between the buffer's position and limit, with carriage returns and IAC escaping
+    * already removed.  The handler must consume every remaining byte.</p>
+    */
+  def onText(text: ByteBuffer): Unit
+
+  /**
+    * <p>The server sent IAC GA or IAC EOR, which generally marks the end of a prompt.</p>
+    */
+  def onGoAhead(): Unit
+
+  /**
+    * <p>IAC WILL/WONT/DO/DONT option.</p>
+    */
+  def onNegotiation(command: Byte, option: Byte): Unit
+
+  /**
+    * <p>IAC SB option ... IAC SE, with the payload in the first length bytes of the array.</p>
+    */
+  def onSubNegotiation(option: Byte, payload: Array[Byte], length: Int): Unit
+
+  def onUnknownCommand(command: Byte): Unit
+
+  /**
+    * <p>MCCP inflated a chunk of input, taking the given nanoseconds.</p>
+    */
+  def onInflate(nanos: Long): Unit = {}
+}
+
+object TelnetDecoder {
+  private val log = Logger(LoggerFactory.getLogger(TelnetDecoder.getClass))
+
+  final val IAC: Byte = 255.toByte
+  final val CR: Byte = '\r'.toByte
+
+  private final val SE = 240
+  private final val NOP = 241
+  private final val EOR = 239
+  private final val GA = 249
+  private final val SB = 250
+  private final val WILL = 251
+  private final val DONT = 254
+  private final val MCCP2: Byte = 86.toByte
+
+  // states, Stream and SubNegotiation are mostly handled by scanning whole runs of bytes
+  private final val Stream = 0
+  private final val Command = 1
+  private final val Negotiation = 2
+  private final val SubOption = 3
+  private final val SubNegotiation = 4
+  private final val SubCommand = 5
+  private final val NumStates = 6
+
+  // actions
+  private final val Ignore = 0
+  private final val Literal = 1
+  private final val GoAhead = 2
+  private final val SaveCommand = 3
+  private final val Negotiate = 4
+  private final val StartSub = 5
+  private final val SubByte = 6
+  private final val EndSub = 7
+  private final val Unknown = 8
+
+  /**
+    * <p>Indexed by state << 8 | unsigned byte, each entry is action << 8 | next state.</p>
+    */
+  private val transitions: Array[Int] = {
+    val table = new Array[Int](NumStates << 8)
+
+    def set(state: Int, byte: Int, action: Int, next: Int): Unit = table(state << 8 | byte) = action << 8 | next
+
+    for (b <- 0 until 256) {
+      set(Stream, b, Ignore, Stream)
+      set(Command, b, Unknown, Stream)
+      set(Negotiation, b, Negotiate, Stream)
+      set(SubOption, b, StartSub, SubNegotiation)
+      set(SubNegotiation, b, SubByte, SubNegotiation)
+      set(SubCommand, b, Ignore, SubNegotiation)
+    }
+
+    set(Stream, 0xFF, Ignore, Command)
+    set(Stream, CR & 0xFF, Ignore, Stream)
+
+    set(Command, 0xFF, Literal, Stream)
+    set(Command, GA, GoAhead, Stream)
+    set(Command, EOR, GoAhead, Stream)
+    set(Command, NOP, Ignore, Stream)
+    set(Command, SE, Ignore, Stream)
+    set(Command, SB, SaveCommand, SubOption)
+    for (c <- WILL to DONT) set(Command, c, SaveCommand, Negotiation)
+
+    set(SubNegotiation, 0xFF, Ignore, SubCommand)
+    set(SubCommand, 0xFF, SubByte, SubNegotiation)
+    set(SubCommand, SE, EndSub, Stream)
+
+    table
+  }
+
+  private val EmptyBuffer = ByteBuffer.allocate(0)
+}
+
+/**
+  * <p>Telnet protocol decoder, including MCCP decompression.  Runs of plain text and subnegotiation payloads are
+  * scanned and copied in bulk; everything else steps through a state transition table one byte at a time.  Nothing
+  * is allocated per packet.</p>
+  *
+  * <p>Not thread safe, a decoder belongs to a single connection.</p>
+  */
+class TelnetDecoder(handler: TelnetHandler) {
+  import TelnetDecoder._
+
+  private val inflater = new Inflater()
+  private val inflateBuffer = ByteBuffer.allocate(1<<16)
+  private val literalIac = ByteBuffer.wrap(Array(IAC))
+
+  private var state = Stream
+  private var command: Byte = 0
+  private var option: Byte = 0
+  private var subBuffer = new Array[Byte](1<<10)
+  private var subLength = 0
+  private var compressed = false
+
+  // compressed input waiting for the inflater, kept in write mode and compacted after every inflate
+  private var zipBuffer = ByteBuffer.allocate(1<<16)
+
+  // the bytes being decoded: the socket buffer, the inflate buffer, or leftover plain bytes in zipBuffer after
+  // compression ends
+  private var rawBuffer = EmptyBuffer
+
+  def isCompressed: Boolean = compressed
+
+  /**
+    * <p>Decode everything between the buffer's position and limit.  The buffer is not referenced after this
+    * returns.</p>
+    */
+  def decode(buffer: ByteBuffer): Unit = {
+    if (compressed) {
+      appendCompressed(buffer)
+    } else rawBuffer = buffer
+
+    decodeLoop()
+
+    rawBuffer = EmptyBuffer
+  }
+
+  @tailrec
+  private def decodeLoop(): Unit = {
+    while (rawBuffer.hasRemaining) {
+      (state: @switch) match {
+        case Stream => scanText(rawBuffer)
+        case SubNegotiation => scanSubNegotiation(rawBuffer)
+        case _ => step(rawBuffer.get)
+      }
+    }
+
+    if (compressed) {
+      if (inflate()) decodeLoop()
+    } else if (rawBuffer eq zipBuffer) {
+      zipBuffer.clear()
+    } else if (zipBuffer.position() > 0) {
+      // compression ended, whatever the inflater didn't consume is plain telnet
+      zipBuffer.flip()
+      rawBuffer = zipBuffer
+      decodeLoop()
+    }
+  }
+
+  private def scanText(buffer: ByteBuffer): Unit = {
+    val start = buffer.position()
+    val limit = buffer.limit()
+    var i = start
+
+    while (i < limit && buffer.get(i) != IAC && buffer.get(i) != CR) i += 1
+
+    if (i > start) {
+      buffer.limit(i)
+      handler.onText(buffer)
+      buffer.limit(limit)
+      buffer.position(i)
+    }
+
+    if (i < limit) {
+      if (buffer.get(i) == IAC) state = Command
+      buffer.position(i + 1)
+    }
+  }
+
+  private def scanSubNegotiation(buffer: ByteBuffer): Unit = {
+    val start = buffer.position()
+    val limit = buffer.limit()
+    var i = start
+
+    while (i < limit && buffer.get(i) != IAC) i += 1
+
+    val length = i - start
+    ensureSubCapacity(length)
+    buffer.get(subBuffer, subLength, length)
+    subLength += length
+
+    if (i < limit) {
+      state = SubCommand
+      buffer.position(i + 1)
+    }
+  }
+
+  private def step(b: Byte): Unit = {
+    val transition = transitions(state << 8 | (b & 0xFF))
+    state = transition & 0xFF
+
+    ((transition >>> 8): @switch) match {
+      case Ignore =>
+
+      case Literal =>
+        literalIac.clear()
+        handler.onText(literalIac)
+
+      case GoAhead => handler.onGoAhead()
+
+      case SaveCommand => command = b
+
+      case Negotiate => handler.onNegotiation(command, b)
+
+      case StartSub =>
+        option = b
+        subLength = 0
+
+      case SubByte =>
+        ensureSubCapacity(1)
+        subBuffer(subLength) = b
+        subLength += 1
+
+      case EndSub =>
+        handler.onSubNegotiation(option, subBuffer, subLength)
+        if (option == MCCP2) startCompression()
+
+      case Unknown => handler.onUnknownCommand(b)
+    }
+  }
+
+  private def ensureSubCapacity(length: Int): Unit = {
+    if (subLength + length > subBuffer.length) {
+      val bigger = new Array[Byte](Math.max(subBuffer.length * 2, subLength + length))
+      System.arraycopy(subBuffer, 0, bigger, 0, subLength)
+      subBuffer = bigger
+    }
+  }
+
+  private def appendCompressed(buffer: ByteBuffer): Unit = {
+    if (zipBuffer.remaining < buffer.remaining) {
+      val bigger = ByteBuffer.allocate(Math.max(zipBuffer.capacity * 2, zipBuffer.position() + buffer.remaining))
+      zipBuffer.flip()
+      bigger.put(zipBuffer)
+      zipBuffer = bigger
+    }
+
+    zipBuffer.put(buffer)
+  }
+
+  /**
+    * <p>Inflate as much of zipBuffer as fits into inflateBuffer and point rawBuffer at the result.  Returns false
+    * when nothing was inflated, i.e. the inflater needs more input.</p>
+    */
+  private def inflate(): Boolean = {
+    zipBuffer.flip()
+
+    try {
+      inflater.setInput(zipBuffer)
+      inflateBuffer.clear()
+      val start = System.nanoTime
+      val read = inflater.inflate(inflateBuffer)
+      handler.onInflate(System.nanoTime - start)
+      inflateBuffer.flip()
+      rawBuffer = inflateBuffer
+
+      if (inflater.finished) {
+        log.debug(s"ending MCCP compression, ${inflater.getRemaining} trailing bytes")
+        compressed = false
+        inflater.reset()
+      }
+
+      log.trace("inflated {} bytes", read)
+      // a chunk holding only the trailer inflates nothing, but what follows it is plain telnet to decode now
+      read > 0 || !compressed
+    } finally {
+      zipBuffer.compact()
+    }
+  }
+
+  private def startCompression() : Unit = {
+    compressed = true
+    inflater.reset()
+
+    if (rawBuffer eq zipBuffer) {
+      zipBuffer.compact()
+    } else {
+      zipBuffer.clear()
+      appendCompressed(rawBuffer)
+    }
+
+    log.debug(s"starting MCCP compression, zipBuffer length == ${zipBuffer.position()}")
+
+    rawBuffer = EmptyBuffer
+  }
+}
@@ -1,89 +1,150 @@
 package aug.io
 
-import java.io.{File, FileOutputStream}
+import java.io.{File, FileInputStream, FileOutputStream}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.{CodingErrorAction, StandardCharsets}
+import java.nio.file.StandardOpenOption
 import java.text.SimpleDateFormat
+import java.time.LocalDate
 import java.util.Date
 import java.util.concurrent.{Executors, LinkedBlockingQueue, TimeUnit}
+import java.util.zip.GZIPOutputStream
 
 import aug.gui.text.{TextState, TextStateColor, TextStateStream}
+import aug.misc.Util.closeQuietly
+import aug.profile.LogConfig
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
+import scala.jdk.CollectionConverters._
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success, Try}
+
 object TextLogger {
   val log = Logger(LoggerFactory.getLogger(TextLogger.getClass))
-}
 
-class TextLogger(dir: File) extends AutoCloseable {
-  import TextLogger.log
+  private val SyncMillis = 1000
+  private val BufferSize = 1 << 16
+  private val Stop = new String("stop")
 
-  private val logFile = {
-    if (!dir.exists()) throw new Exception("text log doesn't exist")
-    if (!dir.isDirectory) throw new Exception(s"$dir isn't a directory")
+  private val compressor = Executors.newSingleThreadExecutor { r =>
+    val thread = new Thread(r, "TextLogger compressor")
+    thread.setDaemon(true)
+    thread
+  }
 
-    val simpleDateFormat = new SimpleDateFormat("yyyy.MM.dd_kk.mm.ss")
+  /**
+    * <p>Replace a closed log segment by file.log.gz, in the background since segments can be large.</p>
+    */
+  private def compress(file: File): Unit = compressor.submit(new Runnable {
+    override def run(): Unit = {
+      val gz = new File(file.getParentFile, file.getName + ".gz")
 
-    val dateString = simpleDateFormat.format(new Date())
+      Try {
+        val in = new FileInputStream(file)
+        try {
+          val out = new GZIPOutputStream(new FileOutputStream(gz), BufferSize)
+          try {
+            in.transferTo(out)
+          } finally out.close()
+        } finally in.close()
+      } match {
+        case Success(_) => if (!file.delete()) log.error(s"failed to delete $file after compressing it")
+        case Failure(e) =>
+          log.error(s"failed to compress $file", e)
+          gz.delete()
+      }
+    }
+  })
+}
 
-    new File(dir, s"$prefix.$dateString.log")
-  }
+/**
+  * <p>Writes the session to log files in dir.  Text is queued by the profile thread and written by a logger thread,
+  * which takes everything queued at once, writes it through a buffer, and flushes and syncs to disk at most once a
+  * second.</p>
+  *
+  * <p>A new file is started when the current one reaches the configured size or the date changes, and closed files
+  * are gzipped if configured.</p>
+  */
+class TextLogger(dir: File, config: LogConfig = LogConfig()) extends AutoCloseable {
+  import TextLogger._
+
+  if (!dir.exists()) throw new Exception("text log doesn't exist")
+  if (!dir.isDirectory) throw new Exception(s"$dir isn't a directory")
+
+  private val maxBytes = if (config.maxSizeMb > 0) config.maxSizeMb.toLong << 20 else Long.MaxValue
+  private val encoder = StandardCharsets.UTF_8.newEncoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+  private val buffer = ByteBuffer.allocateDirect(BufferSize)
+  private val batch = new java.util.ArrayList[String]()
+
+  private var logFile: File = _
+  private var channel: FileChannel = _
+  private var segmentBytes = 0L
+  private var segmentDate: LocalDate = _
+  private var lastSync = System.nanoTime
+  private var unsynced = false
+  private var textState : TextState = TextStateStream
+  private val stripped = new java.lang.StringBuilder
 
-  private val out = new FileOutputStream(logFile)
   private val executorService = Executors.newFixedThreadPool(1)
   protected val textQueue = new LinkedBlockingQueue[String]()
 
+  openSegment()
+
   executorService.submit(new Runnable {
     override def run(): Unit = {
-      while(!Thread.interrupted()) {
+      var running = true
+
+      while (running) {
         try {
-          out.write(textQueue.take().getBytes())
-          out.flush()
+          val first = textQueue.poll(SyncMillis, TimeUnit.MILLISECONDS)
+
+          if (first != null) {
+            batch.add(first)
+            textQueue.drainTo(batch)
+            running = writeBatch()
+          }
+
+          if (unsynced && System.nanoTime - lastSync >= TimeUnit.MILLISECONDS.toNanos(SyncMillis)) sync()
+          if (config.rotateDaily && LocalDate.now != segmentDate) rotate()
         } catch {
-          case i: InterruptedException =>
-            log.info("interrupted, stopping logging")
-            out.flush()
-            return
-          case e: Throwable =>
+          case _: InterruptedException => running = false
+          case NonFatal(e) =>
             log.error("error while logging", e)
+            if (batch.asScala.exists(_ eq Stop)) running = false
+            batch.clear()
         }
       }
+
+      closeSegment()
     }
   })
 
   protected def prefix = "colorLog"
 
-  def addText(text: String): Unit = {
-    textQueue.offer(text)
-  }
-
-  override def close(): Unit = {
-    executorService.shutdownNow()
-    if(!executorService.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
-      log.error("failed to shutdown text logger service")
-    }
-    out.close()
-  }
-}
-
-class ColorlessTextLogger(dir: File) extends TextLogger(dir) {
-
-  override def prefix = "textLog"
-
-  private var textState : TextState = TextStateStream
+  /**
+    * <p>Whether colors are stripped before writing.  Must be a constant, it's read before subclasses are
+    * initialized.</p>
+    */
+  protected def stripColors: Boolean = false
 
-  override def addText(text: String): Unit = {
-    val stringBuilder = StringBuilder.newBuilder
+  private def transform(text: String): String = if (!stripColors) text else {
+    stripped.setLength(0)
 
-    text.getBytes.foreach { b =>
+    text.foreach { c =>
       textState match {
         case TextStateStream =>
-          if (b == 27.toByte) {
+          if (c == 27) {
             textState = TextStateColor
           } else {
-            stringBuilder += b.toChar
+            stripped.append(c)
           }
 
         case TextStateColor =>
-          if (b == 'm') {
+          if (c == 'm') {
             textState = TextStateStream
           }
 
@@ -91,8 +152,93 @@ class ColorlessTextLogger(dir: File) extends TextLogger(dir) {
       }
     }
 
-    textQueue.offer(stringBuilder.result())
+    stripped.toString
+  }
+
+  def addText(text: String): Unit = {
+    textQueue.offer(text)
+  }
+
+  /**
+    * <p>Write the batch, returns false if it held the stop marker.</p>
+    */
+  private def writeBatch(): Boolean = {
+    var running = true
+    var i = 0
+
+    while (i < batch.size) {
+      val text = batch.get(i)
+      if (text eq Stop) running = false else write(transform(text))
+      i += 1
+    }
+
+    batch.clear()
+    running
+  }
+
+  private def write(text: String): Unit = {
+    val chars = java.nio.CharBuffer.wrap(text)
+
+    while (encoder.encode(chars, buffer, true).isOverflow) flushBuffer()
+    encoder.reset()
+
+    if (segmentBytes + buffer.position() >= maxBytes) rotate()
+  }
+
+  private def flushBuffer(): Unit = {
+    buffer.flip()
+    while (buffer.hasRemaining) segmentBytes += channel.write(buffer)
+    buffer.clear()
+    unsynced = true
+  }
+
+  private def sync(): Unit = {
+    flushBuffer()
+    channel.force(false)
+    lastSync = System.nanoTime
+    unsynced = false
+  }
+
+  private def openSegment(): Unit = {
+    val dateString = new SimpleDateFormat("yyyy.MM.dd_kk.mm.ss").format(new Date())
+
+    // a segment rotated earlier in the same second may already be compressed
+    logFile = Iterator.from(0).map { n =>
+      new File(dir, if (n == 0) s"$prefix.$dateString.log" else s"$prefix.$dateString-$n.log")
+    }.find(f => !f.exists() && !new File(dir, f.getName + ".gz").exists()).get
+
+    channel = FileChannel.open(logFile.toPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+    segmentBytes = 0
+    segmentDate = LocalDate.now
+  }
+
+  private def closeSegment(): Unit = {
+    Try(sync()).failed.foreach(e => log.error(s"failed to flush $logFile", e))
+    closeQuietly(channel.close())
+    if (config.compress) compress(logFile)
+  }
+
+  private def rotate(): Unit = {
+    closeSegment()
+    openSegment()
+  }
+
+  override def close(): Unit = {
+    textQueue.offer(Stop)
+    executorService.shutdown()
+    if(!executorService.awaitTermination(SyncMillis + 1000, TimeUnit.MILLISECONDS)) {
+      log.error("failed to shutdown text logger service")
+      executorService.shutdownNow()
+    }
   }
 }
 
+/**
+  * <p>Logs the session without colors.  Colors are stripped on the logger thread.</p>
+  */
+class ColorlessTextLogger(dir: File, config: LogConfig = LogConfig()) extends TextLogger(dir, config) {
 
+  override def prefix = "textLog"
+
+  override protected def stripColors: Boolean = true
+}
@@ -0,0 +1,37 @@
+package aug.misc
+
+import java.io.{BufferedOutputStream, File, FileOutputStream, OutputStream}
+import java.nio.file.{AtomicMoveNotSupportedException, Files, StandardCopyOption}
+
+import scala.util.{Failure, Try}
+
+object AtomicFile {
+
+  /**
+    * <p>Write file through a temporary file in the same directory that is synced and then renamed over it, so
+    * readers and crashes only ever see the old or the new contents, never a truncated file.</p>
+    */
+  def write(file: File)(f: OutputStream => Unit): Try[Unit] = {
+    val tmp = new File(file.getParentFile, s".${file.getName}.tmp")
+
+    TryWith(new FileOutputStream(tmp)) { fos =>
+      val out = new BufferedOutputStream(fos)
+      f(out)
+      out.flush()
+      fos.getFD.sync()
+    }.flatMap(_ => Try(move(tmp, file))).recoverWith {
+      case e =>
+        tmp.delete()
+        Failure(e)
+    }
+  }
+
+  private def move(from: File, to: File): Unit = {
+    try {
+      Files.move(from.toPath, to.toPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+    } catch {
+      case _: AtomicMoveNotSupportedException =>
+        Files.move(from.toPath, to.toPath, StandardCopyOption.REPLACE_EXISTING)
+    }
+  }
+}
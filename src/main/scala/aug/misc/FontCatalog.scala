@@ -0,0 +1,91 @@
+package aug.misc
+
+import java.awt.GraphicsEnvironment
+import java.awt.image.BufferedImage
+import java.io.File
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Files
+import java.security.MessageDigest
+
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.collection.immutable
+import scala.jdk.CollectionConverters._
+import scala.util.{Failure, Success, Try}
+
+/**
+  * <p>Finds the monospace font families.  Measuring means loading every installed font and measuring 52 glyphs of
+  * each, so the result is cached in a file along with a fingerprint of the installed fonts, and only measured
+  * again once the fingerprint changes.</p>
+  */
+object FontCatalog {
+  val log = Logger(LoggerFactory.getLogger(FontCatalog.getClass))
+
+  /**
+    * <p>Hash of the installed font families and the java version, which decides how fonts are measured.</p>
+    */
+  def fingerprint: String = {
+    val digest = MessageDigest.getInstance("SHA-256")
+    digest.update(System.getProperty("java.version").getBytes(UTF_8))
+
+    GraphicsEnvironment.getLocalGraphicsEnvironment.getAvailableFontFamilyNames.sorted.foreach { family =>
+      digest.update(0: Byte)
+      digest.update(family.getBytes(UTF_8))
+    }
+
+    digest.digest.map(b => f"$b%02x").mkString
+  }
+
+  def measure(): immutable.Seq[String] = {
+    // create a graphics environment to measure fonts
+    val bf = new BufferedImage(200, 80, BufferedImage.TYPE_INT_RGB)
+    val bfg = bf.createGraphics
+    val letters: IndexedSeq[Char] = (for (a <- 'a' to 'z') yield a) ++ (for (a <- 'A' to 'Z') yield a)
+
+    GraphicsEnvironment.getLocalGraphicsEnvironment.getAllFonts.filter { font =>
+      val fm = bfg.getFontMetrics(font)
+      val widths = letters.map(ch => fm.stringWidth("" + ch)).toSet
+      !letters.exists(!font.canDisplay(_)) && widths.size == 1
+    }.map(_.getFamily()).toSet.toList.sorted
+  }
+
+  /**
+    * <p>The cached families, if the cache was written for these fonts.  The first line of the cache is the
+    * fingerprint, then one family per line.</p>
+    */
+  def read(cache: File, fingerprint: String): Option[immutable.Seq[String]] = {
+    if (!cache.exists) None else Try(Files.readAllLines(cache.toPath, UTF_8).asScala.toList) match {
+      case Success(`fingerprint` :: families) => Some(families)
+      case Success(_) => None
+      case Failure(e) =>
+        log.warn(s"failed to read font catalog $cache", e)
+        None
+    }
+  }
+
+  def write(cache: File, fingerprint: String, families: immutable.Seq[String]): Unit = {
+    AtomicFile.write(cache) { out =>
+      out.write((fingerprint +: families).mkString("", "\n", "\n").getBytes(UTF_8))
+    } match {
+      case Failure(e) => log.warn(s"failed to write font catalog $cache", e)
+      case Success(_) =>
+    }
+  }
+
+  /**
+    * <p>The monospace families, from cache if the installed fonts haven't changed since it was written.</p>
+    */
+  def monospaceFamilies(cache: Option[File]): immutable.Seq[String] = cache match {
+    case None => measure()
+    case Some(file) =>
+      val fp = fingerprint
+
+      read(file, fp).getOrElse {
+        val (ms, families) = Util.time(measure())
+        log.info(s"measured ${families.size} monospace fonts in ${ms}ms")
+        write(file, fp, families)
+        families
+      }
+  }
+}
@@ -0,0 +1,129 @@
+package aug.misc
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{AtomicLongArray, LongAdder}
+
+object Histogram {
+  private val SubBucketBits = 5
+  private val SubBuckets = 1 << SubBucketBits
+  private val MaxValue = (1L << 40) - 1
+  private val NumBuckets = index(MaxValue) + 1
+
+  /**
+    * <p>Values below SubBuckets get a bucket each, above that every power of two is cut into SubBuckets buckets,
+    * so a bucket is never wider than 1/SubBuckets of its values.</p>
+    */
+  private def index(value: Long): Int = {
+    if (value < SubBuckets) value.toInt else {
+      val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - SubBucketBits
+      (shift + 1) * SubBuckets + (value >> shift).toInt - SubBuckets
+    }
+  }
+
+  private def lowerBound(index: Int): Long = {
+    if (index < SubBuckets) index else {
+      val shift = index / SubBuckets - 1
+      (index % SubBuckets + SubBuckets).toLong << shift
+    }
+  }
+}
+
+/**
+  * <p>Log linear histogram of microsecond values, in the style of HdrHistogram: buckets are about 3% wide, so
+  * percentiles are accurate to about 3% from one microsecond to days.  Recording is an array increment and never
+  * allocates.  Safe to record from any thread and read from any other.</p>
+  */
+class Histogram {
+  import Histogram._
+
+  private val counts = new AtomicLongArray(NumBuckets)
+  private val total = new LongAdder
+  private val sum = new LongAdder
+  @volatile private var max = 0L
+
+  def record(micros: Long): Unit = {
+    val value = Math.min(Math.max(0, micros), MaxValue)
+    counts.incrementAndGet(index(value))
+    total.increment()
+    sum.add(value)
+    if (value > max) max = value
+  }
+
+  def recordNanos(nanos: Long): Unit = record(TimeUnit.NANOSECONDS.toMicros(nanos))
+
+  /**
+    * <p>Time f, recording how long it took.</p>
+    */
+  def time[T](f: => T): T = {
+    val start = System.nanoTime
+    try f finally recordNanos(System.nanoTime - start)
+  }
+
+  def count: Long = total.sum
+
+  def mean: Double = {
+    val n = count
+    if (n == 0) 0 else sum.sum.toDouble / n
+  }
+
+  def maxValue: Long = max
+
+  /**
+    * <p>The value below which the given percent of recorded values fall, as the lower bound of its bucket.</p>
+    */
+  def percentile(percent: Double): Long = {
+    val n = count
+    if (n == 0) 0 else {
+      val target = Math.max(1, Math.ceil(n * percent / 100).toLong)
+      var seen = 0L
+      var i = 0
+
+      while (i < NumBuckets) {
+        seen += counts.get(i)
+        if (seen >= target) return lowerBound(i)
+        i += 1
+      }
+
+      max
+    }
+  }
+
+  def reset(): Unit = {
+    var i = 0
+    while (i < NumBuckets) {
+      counts.set(i, 0)
+      i += 1
+    }
+    total.reset()
+    sum.reset()
+    max = 0
+  }
+}
+
+/**
+  * <p>Counts events and reports their rate per second, measured over at least the last second.</p>
+  */
+class Meter {
+  private val total = new LongAdder
+  private var lastCount = 0L
+  private var lastNanos = System.nanoTime
+  private var lastRate = 0.0
+
+  def mark(n: Long = 1): Unit = total.add(n)
+
+  def count: Long = total.sum
+
+  def rate: Double = synchronized {
+    val now = System.nanoTime
+    val elapsed = now - lastNanos
+
+    if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+      val current = count
+      lastRate = (current - lastCount) * TimeUnit.SECONDS.toNanos(1).toDouble / elapsed
+      lastCount = current
+      lastNanos = now
+    }
+
+    lastRate
+  }
+}
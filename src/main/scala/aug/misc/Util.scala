@@ -3,8 +3,8 @@ package aug.misc
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
-import java.awt.image.BufferedImage
-import java.awt.{Color, Font, GraphicsEnvironment}
+import java.awt.{Color, Font}
+import java.io.File
 import java.nio.ByteBuffer
 import java.util.concurrent.{Executors, Future}
 import scala.collection.immutable
@@ -73,20 +73,21 @@ object Util {
 
   val fontSizes = Array(8, 9, 10, 11, 12, 13, 14, 18, 24, 36, 48, 64)
 
-  val monospaceFamilies: immutable.Seq[String] = {
-    // create a graphics environment to measure fonts
-    val bf = new BufferedImage(200, 80, BufferedImage.TYPE_INT_RGB)
-    val bfg = bf.createGraphics
-    val letters: IndexedSeq[Char] = (for (a <- 'a' to 'z') yield a) ++ (for (a <- 'A' to 'Z') yield a)
-
-    GraphicsEnvironment.getLocalGraphicsEnvironment.getAllFonts.filter { font =>
-      val fm = bfg.getFontMetrics(font)
-      val widths = letters.map(ch => fm.stringWidth("" + ch)).toSet
-      !letters.exists(!font.canDisplay(_)) && widths.size == 1
-    }.map(_.getFamily()).toSet.toList.sorted
+  @volatile private var fontCache: Option[File] = None
+  private lazy val monospaceCatalog: Future[immutable.Seq[String]] = run(FontCatalog.monospaceFamilies(fontCache))
+
+  /**
+    * <p>Start finding the monospace fonts in the background, cached in cache between runs.</p>
+    */
+  def loadFonts(cache: File): Unit = {
+    fontCache = Some(cache)
+    monospaceCatalog
   }
 
-  val defaultFont: Font = {
+  // lazy so profiles without a UI never load fonts
+  lazy val monospaceFamilies: immutable.Seq[String] = monospaceCatalog.get
+
+  lazy val defaultFont: Font = {
     val desirableFonts = List("Menlo", "Consolas")
 
     desirableFonts.find(monospaceFamilies.contains).map(new Font(_, 0, 12))
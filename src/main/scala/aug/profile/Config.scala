@@ -1,16 +1,17 @@
 package aug.profile
 
 import java.awt.Font
-import java.io.{File, FileInputStream, FileOutputStream}
+import java.io.{File, FileInputStream, OutputStream}
 import javax.xml.bind.{JAXBContext, Marshaller}
 import javax.xml.bind.annotation.{XmlAccessType, XmlAccessorType, XmlRootElement}
 
-import aug.gui.MainWindow
+import aug.gui.{GuiProfile, MainWindow}
 import aug.misc.{TryWith, Util}
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
 import scala.collection.mutable
+import scala.util.{Failure, Success}
 
 @XmlRootElement(name = "ColorSchemeConfig")
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -46,7 +47,10 @@ case class TelnetConfig(
                          echo: Boolean = true,
                          mccpEnabled: Boolean = true,
                          gmcpEnabled: Boolean = true,
-                         gmcpSupports: String = ""
+                         gmcpSupports: String = "",
+                         charset: String = "UTF-8",
+                         paceCommands: Int = 0,
+                         paceMillis: Int = 1000
                        ) {
   private def this() = this("")
 }
@@ -57,7 +61,9 @@ case class JavaConfig(
                        clientMode: String = "disabled",
                        mainClass: String = "",
                        classPath: Array[String] = Array.empty,
-                       clientTimeout: Int = 3000
+                       clientTimeout: Int = 3000,
+                       fragmentDelay: Int = 0,
+                       clientExecution: String = "thread"
                      ) {
   private def this() = this("disabled")
 }
@@ -85,11 +91,24 @@ case class WindowConfig(
                        colorScheme: String = "default",
                        echoCommands: Boolean = true,
                        cmdsOnNewLine: Boolean = false,
-                       stackCmds: Boolean = true
+                       stackCmds: Boolean = true,
+                       scrollbackLines: Int = 100000,
+                       maxFps: Int = 60
                      ) {
   private def this() = this("")
 }
 
+@XmlRootElement(name = "LogConfig")
+@XmlAccessorType(XmlAccessType.FIELD)
+case class LogConfig(
+                      maxSizeMb: Int = 512,
+                      rotateDaily: Boolean = true,
+                      compress: Boolean = false,
+                      recordSession: Boolean = false
+                    ) {
+  private def this() = this(512)
+}
+
 @XmlRootElement(name = "MainConfig")
 @XmlAccessorType(XmlAccessType.FIELD)
 case class MainConfig(
@@ -107,7 +126,8 @@ case class ProfileConfig(
                           javaConfig: JavaConfig = JavaConfig(),
                           commandLineFont: FontConfig = FontConfig(),
                           consoleWindow: WindowConfig = WindowConfig(),
-                          autoLog: String = "none"
+                          autoLog: String = "none",
+                          logConfig: LogConfig = LogConfig()
                      ) {
   private def this() = this("")
 }
@@ -117,14 +137,14 @@ object ConfigManager {
 
   private val activeProfiles = mutable.Map[String, Profile]()
   private val profiles = mutable.Map[String, ProfileConfig]()
-  private val profilesConfigContext = JAXBContext.newInstance(classOf[ProfileConfig])
-  private val profilesConfigMarshaller = profilesConfigContext.createMarshaller()
-  profilesConfigMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true)
+  // lazy since building a context is slow, and load builds both at once on different threads
+  private lazy val profilesConfigContext = JAXBContext.newInstance(classOf[ProfileConfig])
 
   private var mainConfig : MainConfig = MainConfig()
-  private val mainConfigContext = JAXBContext.newInstance(classOf[MainConfig])
-  private val mainConfigMarshaller = mainConfigContext.createMarshaller()
-  mainConfigMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true)
+  private lazy val mainConfigContext = JAXBContext.newInstance(classOf[MainConfig])
+
+  private val SaveDebounceMillis = 500
+  private val writer = new ConfigWriter(SaveDebounceMillis)
 
   val configDir: File = {
     val homeDir = System.getProperty("user.home")
@@ -163,15 +183,21 @@ object ConfigManager {
   def setMainConfig(mainConfig: MainConfig): Unit = {
     synchronized {
       this.mainConfig = mainConfig
-
-      TryWith(new FileOutputStream(mainConfigPath)) { fos =>
-        mainConfigMarshaller.marshal(mainConfig, fos)
-      }
+      writer.save(mainConfigPath)(marshal(mainConfigContext, mainConfig))
     }
   }
 
-  def activateProfile(name: String, mainWindow: MainWindow): Unit = synchronized {
-    activeProfiles(name) = new Profile(profiles(name), mainWindow)
+  def activateProfile(name: String, mainWindow: MainWindow): Unit = {
+    activateProfile(name, new GuiProfile(_, mainWindow))
+  }
+
+  /**
+    * <p>Open the named profile with the given kind of profile.</p>
+    */
+  def activateProfile(name: String, newProfile: ProfileConfig => Profile): Profile = synchronized {
+    val profile = newProfile(profiles(name))
+    activeProfiles(name) = profile
+    profile
   }
 
   def getUnactivedProfiles: List[String] = synchronized {
@@ -217,33 +243,54 @@ object ConfigManager {
         dir.mkdirs
       }
 
-      val file = new File(dir, "profileConfig.xml")
+      writer.save(new File(dir, "profileConfig.xml"))(marshal(profilesConfigContext, pc))
+    }
+  }
 
-      TryWith(new FileOutputStream(file)) { fos =>
-        profilesConfigMarshaller.marshal(pc, fos)
-      }
+  private def marshal(context: JAXBContext, config: AnyRef)(out: OutputStream): Unit = {
+    val marshaller = context.createMarshaller()
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true)
+    marshaller.marshal(config, out)
+  }
+
+  private def unmarshal[T](context: JAXBContext, file: File): Option[T] = {
+    TryWith(new FileInputStream(file))(context.createUnmarshaller().unmarshal(_).asInstanceOf[T]) match {
+      case Success(config) => Some(config)
+      case Failure(e) =>
+        log.error(s"failed to load $file", e)
+        None
     }
   }
 
+  /**
+    * <p>Write every pending config save now.  Saves are otherwise written in the background shortly after
+    * they're made.</p>
+    */
+  def flush(): Unit = writer.flush()
+
   def getMainConfig: MainConfig = synchronized(mainConfig)
 
+  /**
+    * <p>Load the main config and every profile, each file on its own thread.</p>
+    */
   def load() : Unit = {
-    if (mainConfigPath.exists) {
-      TryWith(new FileInputStream(mainConfigPath)) { fis =>
-        mainConfig = mainConfigContext.createUnmarshaller().unmarshal(fis).asInstanceOf[MainConfig]
-      }
+    val loadedMain = Util.run {
+      if (mainConfigPath.exists) unmarshal[MainConfig](mainConfigContext, mainConfigPath) else None
     }
 
-    profilesDir.listFiles.filter(_.isDirectory).foreach { profileDir =>
-      val profileFile = new File(profileDir, "profileConfig.xml")
+    val profileFiles = profilesDir.listFiles.filter(_.isDirectory).map(new File(_, "profileConfig.xml"))
+    val loadedProfiles = profileFiles.filter(_.exists).map { file =>
+      file -> Util.run(unmarshal[ProfileConfig](profilesConfigContext, file))
+    }
+
+    synchronized {
+      loadedMain.get.foreach(mainConfig = _)
 
-      if (profileFile.exists()) {
-        TryWith(new FileInputStream(profileFile)) { fis =>
-          val profileConfig = profilesConfigContext.createUnmarshaller().unmarshal(fis).asInstanceOf[ProfileConfig]
+      loadedProfiles.foreach { case (file, loaded) =>
+        loaded.get.foreach { profileConfig =>
           profiles(profileConfig.name) = profileConfig
+          log.info("loaded profile {}", file)
         }
-
-        log.info("loaded profile {}", profileFile)
       }
     }
   }
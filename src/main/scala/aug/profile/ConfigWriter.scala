@@ -0,0 +1,77 @@
+package aug.profile
+
+import java.io.{File, OutputStream}
+import java.util.concurrent.{ConcurrentHashMap, Executors, RejectedExecutionException, TimeUnit}
+
+import aug.misc.AtomicFile
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.jdk.CollectionConverters._
+import scala.util.{Failure, Success, Try}
+
+object ConfigWriter {
+  val log = Logger(LoggerFactory.getLogger(ConfigWriter.getClass))
+}
+
+/**
+  * <p>Saves config files off the caller's thread.  Saves of the same file within debounceMillis of the first are
+  * merged into one write of the latest contents, and every write goes through {@link AtomicFile} so a crash never
+  * leaves a truncated config behind.</p>
+  */
+class ConfigWriter(debounceMillis: Long) extends AutoCloseable {
+  import ConfigWriter.log
+
+  private val pending = new ConcurrentHashMap[File, OutputStream => Unit]()
+  private val executor = Executors.newSingleThreadScheduledExecutor { r =>
+    val thread = new Thread(r, "ConfigWriter")
+    thread.setDaemon(true)
+    thread
+  }
+
+  /**
+    * <p>Save file with write, which must only capture immutable state since it runs later on the writer thread.</p>
+    */
+  def save(file: File)(write: OutputStream => Unit): Unit = {
+    if (pending.put(file, write) == null) {
+      try {
+        executor.schedule(new Runnable {
+          override def run(): Unit = writeFile(file)
+        }, debounceMillis, TimeUnit.MILLISECONDS)
+      } catch {
+        case _: RejectedExecutionException => writeFile(file)
+      }
+    }
+  }
+
+  def pendingSaves: Int = pending.size
+
+  private def writeFile(file: File): Unit = {
+    val write = pending.remove(file)
+
+    if (write != null) AtomicFile.write(file)(write) match {
+      case Failure(e) => log.error(s"failed to save $file", e)
+      case Success(_) =>
+    }
+  }
+
+  private def drain(): Unit = pending.keySet.asScala.toList.foreach(writeFile)
+
+  /**
+    * <p>Write every pending save now and wait for them.</p>
+    */
+  def flush(): Unit = {
+    Try(executor.submit(new Runnable {
+      override def run(): Unit = drain()
+    }).get) match {
+      case Failure(_: RejectedExecutionException) => drain()
+      case Failure(e) => log.error("failed to flush config saves", e)
+      case Success(_) =>
+    }
+  }
+
+  override def close(): Unit = {
+    flush()
+    executor.shutdown()
+  }
+}
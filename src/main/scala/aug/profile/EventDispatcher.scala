@@ -0,0 +1,84 @@
+package aug.profile
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.LockSupport
+
+/**
+  * <p>Event queue for one profile with a lock free queue per lane.  Any thread can offer, only the profile thread
+  * takes.  Lanes are ordered by priority, lane 0 first: take always returns the oldest event of the first lane
+  * that isn't empty, so events within a lane keep the order they were offered in.</p>
+  *
+  * <p>The consumer drains events one by one without blocking until every lane is empty, and only then parks.
+  * Producers only unpark it when it's parked, so a burst of events costs one wake up.</p>
+  */
+class EventDispatcher[E <: AnyRef](numLanes: Int, laneOf: E => Int) {
+  private val queues = Array.fill(numLanes)(new ConcurrentLinkedQueue[E]())
+  private val depths = Array.fill(numLanes)(new AtomicInteger())
+
+  @volatile private var consumer: Thread = _
+  @volatile private var waiting = false
+
+  def offer(event: E): Boolean = {
+    val lane = laneOf(event)
+    queues(lane).offer(event)
+    depths(lane).incrementAndGet()
+
+    if (waiting) {
+      val thread = consumer
+      if (thread != null) LockSupport.unpark(thread)
+    }
+
+    true
+  }
+
+  private def poll(): E = {
+    var lane = 0
+
+    while (lane < numLanes) {
+      val event = queues(lane).poll()
+      if (event != null) {
+        depths(lane).decrementAndGet()
+        return event
+      }
+      lane += 1
+    }
+
+    null.asInstanceOf[E]
+  }
+
+  /**
+    * <p>The next event by priority, waiting for one if every lane is empty.  Must only be called by one thread.</p>
+    */
+  @throws[InterruptedException]
+  def take(): E = {
+    consumer = Thread.currentThread
+
+    var event = poll()
+
+    while (event == null) {
+      waiting = true
+      event = poll()
+
+      if (event == null) {
+        LockSupport.park(this)
+        if (Thread.interrupted()) {
+          waiting = false
+          throw new InterruptedException
+        }
+      }
+
+      waiting = false
+      if (event == null) event = poll()
+    }
+
+    event
+  }
+
+  /**
+    * <p>The number of events waiting in the lane.</p>
+    */
+  def depth(lane: Int): Int = depths(lane).get
+
+  def size: Int = depths.map(_.get).sum
+}
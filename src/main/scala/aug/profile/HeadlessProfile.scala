@@ -0,0 +1,85 @@
+package aug.profile
+
+import aug.gui.text.{HeadlessConsole, TextBuffer}
+import aug.io.{ConnectionManager, HeadlessSystemLog, SystemLogInterface}
+import aug.script.framework.WindowReference
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+object HeadlessProfile {
+  val log = Logger(LoggerFactory.getLogger(HeadlessProfile.getClass))
+
+  /**
+    * <p>Lines kept in memory per window.  Older console lines are still spilled to disk.</p>
+    */
+  val MaxScrollbackLines = 2000
+
+  private def headless(profileConfig: ProfileConfig): ProfileConfig = {
+    val window = profileConfig.consoleWindow
+    profileConfig.copy(consoleWindow = window.copy(
+      scrollbackLines = Math.min(window.scrollbackLines, MaxScrollbackLines)))
+  }
+}
+
+/**
+  * <p>A profile without a UI, for running clients where there is no display.  Windows are text buffers, so the
+  * client can write and read lines but nothing is painted, and the system log goes to the application log.</p>
+  */
+class HeadlessProfile(config: ProfileConfig, systemLog: SystemLogInterface)
+  extends Profile(HeadlessProfile.headless(config), systemLog) {
+
+  start()
+
+  override protected def newConsole(): ProfileConsole = new HeadlessConsole(profileConfig, this)
+
+  override protected def newTextWindow(name: String): ProfileWindow = new TextBuffer(profileConfig)
+
+  override def setProfileConfig(profileConfig: ProfileConfig): Unit = {
+    super.setProfileConfig(HeadlessProfile.headless(profileConfig))
+  }
+
+  /**
+    * <p>Nothing to lay out, the graph was only checked.</p>
+    */
+  override protected def layoutWindows(windowReference: WindowReference): Unit = {}
+
+  override protected def closed(): Unit = {}
+}
+
+/**
+  * <p>Runs the named profiles without a UI and connects them.  Profiles are configured as usual, in the config
+  * directory, and stop when the JVM does.</p>
+  */
+object HeadlessMain {
+  import HeadlessProfile.log
+
+  def main(args: Array[String]): Unit = {
+    System.setProperty("java.awt.headless", "true")
+
+    ConfigManager.load()
+
+    val known = ConfigManager.getProfiles.map(_.name).toSet
+    val (names, unknown) = args.toList.distinct.partition(known.contains)
+
+    if (names.isEmpty || unknown.nonEmpty) {
+      unknown.foreach(name => System.err.println(s"no profile named $name"))
+      System.err.println(s"usage: HeadlessMain <profile>...\nprofiles: ${known.toList.sorted.mkString(", ")}")
+      System.exit(1)
+    }
+
+    ConnectionManager.start()
+
+    val systemLog = new HeadlessSystemLog
+
+    Runtime.getRuntime.addShutdownHook(new Thread(() => {
+      ConfigManager.closeAllProfiles()
+      ConfigManager.flush()
+      ConnectionManager.close()
+    }, "HeadlessMain shutdown"))
+
+    names.foreach { name =>
+      ConfigManager.activateProfile(name, new HeadlessProfile(_, systemLog)).connect()
+      log.info(s"started profile $name")
+    }
+  }
+}
@@ -1,19 +1,15 @@
 package aug.profile
 
-import java.awt.Component
 import java.io.File
 import java.lang.Boolean
 import java.util
-import java.util.concurrent.PriorityBlockingQueue
-import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
-import javax.swing.{BorderFactory, JSplitPane, SwingUtilities}
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicBoolean
 
-import aug.gui.text.{ConsoleTextArea, HasHighlight, SplittableTextArea}
-import aug.gui.{MainWindow, ProfilePanel}
-import aug.io.{PrefixSystemLog, Telnet}
+import aug.io.{Gmcp, PrefixSystemLog, SystemLogInterface, Telnet}
 import aug.script.framework._
 import aug.script.framework.tools.ScalaUtils
-import aug.script.{Client, ClientCaller, ClientTimeoutException, ScriptLoader}
+import aug.script.{Client, ClientCaller, ClientTimeoutException, ScriptLoader, TimingWheel}
 import aug.misc.Util
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
@@ -21,65 +17,75 @@ import org.slf4j.LoggerFactory
 import scala.annotation.tailrec
 import scala.util.{Failure, Success, Try}
 
-sealed trait ProfileEvent extends Comparable[ProfileEvent] {
-  def priority : Int
-  def subPriority : Long
-
-  override def compareTo(other: ProfileEvent) : Int = {
-    val diff = if (priority == other.priority) {
-      subPriority - other.subPriority
-    } else {
-      priority - other.priority
-    }
-
-    if (diff > 0) 1 else if (diff == 0) 0 else -1
-  }
+sealed trait ProfileEvent {
+  def lane : Int
 }
 
-abstract class AbstractProfileEvent(major: Int, minor : Long) extends ProfileEvent {
-  override def priority: Int = major
-  override def subPriority: Long = minor
+/**
+  * <p>Events are handled lane by lane: control events before client events before telnet data, and in the order
+  * they were offered within a lane.</p>
+  */
+object ProfileEvent {
+  val CloseLane = 0
+  val ControlLane = 1
+  val ClientLane = 2
+  val DataLane = 3
+
+  val LaneNames: Array[String] = Array("close", "control", "client", "data")
 }
 
-private[profile] object EventId {
-  private val next = new AtomicLong(0)
-  def nextId: Long = next.incrementAndGet()
-}
-
-case class CloseProfile() extends AbstractProfileEvent(Int.MinValue, EventId.nextId)
-
-case class TelnetConnect(id: Long, url: String, port: Int) extends AbstractProfileEvent(Int.MinValue + 1, EventId.nextId)
-case class TelnetDisconnect(id: Long) extends AbstractProfileEvent(Int.MinValue + 1, EventId.nextId)
-case class UserCommand(data: String) extends AbstractProfileEvent(Int.MinValue + 1, EventId.nextId)
-case class SendData(data: String, silent: Boolean = false) extends AbstractProfileEvent(Int.MinValue + 1, EventId.nextId)
-case class ProfileLog(on: Boolean, color: Boolean) extends AbstractProfileEvent(Int.MinValue + 1, EventId.nextId)
-case class ClientEvent(event: ClientCaller) extends AbstractProfileEvent(Int.MinValue + 2, EventId.nextId)
-
-case class TelnetError(data: String) extends AbstractProfileEvent(0, EventId.nextId)
-case class TelnetRecv(data: String, ga: Boolean) extends AbstractProfileEvent(0, EventId.nextId)
-case class TelnetGMCP(data: String) extends AbstractProfileEvent(0, EventId.nextId)
-
-case class ProfileConnect() extends AbstractProfileEvent(0, EventId.nextId)
-case class ProfileDisconnect() extends AbstractProfileEvent(0, EventId.nextId)
-case class ClientStart() extends AbstractProfileEvent(0, EventId.nextId)
-case class ClientStop() extends AbstractProfileEvent(0, EventId.nextId)
-
-class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow) extends AutoCloseable
-  with HasHighlight {
+abstract class AbstractProfileEvent(override val lane: Int) extends ProfileEvent
+
+import ProfileEvent._
+
+case class CloseProfile() extends AbstractProfileEvent(CloseLane)
+
+case class TelnetConnect(id: Long, url: String, port: Int) extends AbstractProfileEvent(ControlLane)
+case class TelnetDisconnect(id: Long) extends AbstractProfileEvent(ControlLane)
+case class UserCommand(data: String) extends AbstractProfileEvent(ControlLane)
+case class SendData(data: String, silent: Boolean = false) extends AbstractProfileEvent(ControlLane)
+case class PacedSend() extends AbstractProfileEvent(ControlLane)
+case class SendQueueFlush() extends AbstractProfileEvent(ControlLane)
+case class SendQueueClear() extends AbstractProfileEvent(ControlLane)
+case class ProfileLog(on: Boolean, color: Boolean) extends AbstractProfileEvent(ControlLane)
+case class ClientEvent(event: ClientCaller) extends AbstractProfileEvent(ClientLane)
+
+case class TelnetError(data: String) extends AbstractProfileEvent(DataLane)
+case class TelnetRecv(data: String, ga: Boolean) extends AbstractProfileEvent(DataLane)
+case class TelnetGMCP(message: GmcpMessage) extends AbstractProfileEvent(DataLane)
+case class FragmentQuiet() extends AbstractProfileEvent(DataLane)
+/**
+  * <p>Counts down latch once every data event offered before it has been handled.</p>
+  */
+case class DataBarrier(latch: CountDownLatch) extends AbstractProfileEvent(DataLane)
+
+case class ProfileConnect() extends AbstractProfileEvent(DataLane)
+case class ProfileDisconnect() extends AbstractProfileEvent(DataLane)
+case class ClientStart() extends AbstractProfileEvent(DataLane)
+case class ClientStop() extends AbstractProfileEvent(DataLane)
+
+/**
+  * <p>A profile without a UI: drives the connection, the client and its scheduler, and logging against its console
+  * and text windows.  {@link aug.gui.GuiProfile} shows them in a tab, {@link HeadlessProfile} only keeps them in
+  * memory.</p>
+  *
+  * <p>Subclasses must call start once they are initialized, events are only handled from then on.</p>
+  */
+abstract class Profile(protected var profileConfig: ProfileConfig, systemLog: SystemLogInterface)
+  extends AutoCloseable {
 
   import Profile.log
   import Util.closeQuietly
 
-  val profilePanel = new ProfilePanel(mainWindow, this)
   val name: String = profileConfig.name
-  val slog = new PrefixSystemLog(s"[$name]: ", mainWindow.slog)
-  mainWindow.tabbedPane.addProfile(name, profilePanel)
+  val slog = new PrefixSystemLog(s"[$name]: ", systemLog)
   val logDir = new File(ConfigManager.getProfileDir(name), "log")
-  logDir.mkdir()
+  logDir.mkdirs()
 
   private val thread = new Thread(() => threadLoop(), "ProfileThread: " + name)
-  private val windows = scala.collection.mutable.Map[String, SplittableTextArea]()
-  private val threadQueue = new PriorityBlockingQueue[ProfileEvent]()
+  protected val windows: scala.collection.mutable.Map[String, ProfileWindow] =
+    scala.collection.mutable.Map[String, ProfileWindow]()
+  private val threadQueue = new EventDispatcher[ProfileEvent](LaneNames.length, _.lane)
   private val running = new AtomicBoolean(true)
 
   private var telnet : Option[Telnet] = None
@@ -87,7 +93,15 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
   private var clientReloadData = new ReloadData
   private var schedulerState = List.empty[String]
 
-  val console = new ConsoleTextArea(profileConfig, this)
+  private val sendQueue = scala.collection.mutable.Queue[(String, Boolean)]()
+  private var paceWindowStart = 0L
+  private var paceSent = 0
+  private var pacePending = false
+
+  val gmcp = new Gmcp
+
+  val metrics = new ProfileMetrics(name, () => threadQueue.size)
+  val console: ProfileConsole = newConsole()
   windows("console") = console
 
   console.addLine("profile: " + profileConfig.name)
@@ -96,32 +110,45 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
     e.printStackTrace()
   })
 
-  thread.start()
+  /**
+    * <p>Called once by the base constructor.  Only the base class is initialized at that point.</p>
+    */
+  protected def newConsole(): ProfileConsole
 
-  profilePanel.setProfileConfig(profileConfig)
-  profilePanel.setContents(console)
-  setProfileConfig(profileConfig)
+  protected def newTextWindow(name: String): ProfileWindow
 
-  if (profileConfig.javaConfig.clientMode == "autostart") {
-    offer(ClientStart())
-  }
+  /**
+    * <p>Arrange the windows, every window named in the graph exists.</p>
+    */
+  protected def layoutWindows(windowReference: WindowReference): Unit
 
-  if (profileConfig.autoLog == "without color" || profileConfig.autoLog == "both") {
-    offer(ProfileLog(true, false))
-  }
+  /**
+    * <p>Called on the event thread once the profile has shut down.</p>
+    */
+  protected def closed(): Unit
 
-  if (profileConfig.autoLog == "with color" || profileConfig.autoLog == "both") {
-    offer(ProfileLog(true, true))
+  /**
+    * <p>Start handling events, and start the client and logs if configured to.</p>
+    */
+  protected def start(): Unit = {
+    thread.start()
+
+    if (profileConfig.javaConfig.clientMode == "autostart") {
+      offer(ClientStart())
+    }
+
+    if (profileConfig.autoLog == "without color" || profileConfig.autoLog == "both") {
+      offer(ProfileLog(true, false))
+    }
+
+    if (profileConfig.autoLog == "with color" || profileConfig.autoLog == "both") {
+      offer(ProfileLog(true, true))
+    }
   }
 
   def setProfileConfig(profileConfig: ProfileConfig): Unit = synchronized {
     this.profileConfig = profileConfig
-    profilePanel.setProfileConfig(profileConfig)
-    windows.values.foreach({ w =>
-      w.setProfileConfig(profileConfig)
-      w.setActiveFont(profileConfig.consoleWindow.font.toFont)
-      w.repaint()
-    })
+    windows.values.foreach(_.setProfileConfig(profileConfig))
   }
 
   def connect(): Unit = offer(ProfileConnect())
@@ -154,8 +181,14 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
           case TelnetRecv(data, ga) =>
             console.processText(data, ga)
 
-          case TelnetGMCP(data) =>
-            withClient(_.handleGmcp(data))
+          case TelnetGMCP(message) =>
+            withClient(_.handleGmcpMessage(message))
+
+          case FragmentQuiet() =>
+            console.fragmentQuiet()
+
+          case DataBarrier(latch) =>
+            latch.countDown()
 
           case UserCommand(data) =>
             client match {
@@ -170,12 +203,15 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
           case CloseProfile() =>
             closeQuietly(telnet.foreach(_.close()))
             closeQuietly(client.foreach(_.shutdown()))
-            mainWindow.tabbedPane.remove(profilePanel)
+            closeQuietly(console.close())
+            closeQuietly(metrics.close())
+            closed()
 
           case ProfileConnect() =>
             telnet match {
               case Some(_) => slog.error(s"already connected")
               case None =>
+                gmcp.clear()
                 telnet = Some(new Telnet(this, profileConfig))
                 slog.info(f"starting connection to ${profileConfig.telnetConfig.host}:" +
                   f"${profileConfig.telnetConfig.port}")
@@ -217,6 +253,7 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
             client match {
               case Some(scr) =>
                 client = None
+                gmcp.clearSubscriptions()
                 schedulerState = scr.schedulerState
                 clientReloadData = scr.shutdown()
               case None =>
@@ -226,6 +263,17 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
           case SendData(cmds, silent) =>
             sendNow(cmds, silent)
 
+          case PacedSend() =>
+            pacePending = false
+            sendQueued(paced = true)
+
+          case SendQueueFlush() =>
+            sendQueued(paced = false)
+
+          case SendQueueClear() =>
+            if (sendQueue.nonEmpty) slog.info(s"dropped ${sendQueue.size} queued commands")
+            sendQueue.clear()
+
           case ProfileLog(on, color) =>
             console.log(on, color)
 
@@ -251,6 +299,24 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
     }
   }
 
+  /**
+    * <p>Offer the event once System.nanoTime reaches deadlineNanos.</p>
+    */
+  def offerAt(deadlineNanos: Long, event: ProfileEvent): Unit = Profile.timer.scheduleAt(deadlineNanos, this -> event)
+
+  def offerIn(delayMillis: Long, event: ProfileEvent): Unit = Profile.timer.schedule(delayMillis, this -> event)
+
+  /**
+    * <p>Events waiting to be handled, by lane.</p>
+    */
+  def eventQueueDepths: Map[String, Int] = {
+    LaneNames.indices.map(lane => LaneNames(lane) -> threadQueue.depth(lane)).toMap
+  }
+
+  def flushSendQueue(): Unit = offer(SendQueueFlush())
+
+  def clearSendQueue(): Unit = offer(SendQueueClear())
+
   def clientStart(): Unit = offer(ClientStart())
 
   def clientStop(): Unit = offer(ClientStop())
@@ -293,6 +359,7 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
   private def onDisconnect(id: Long): Unit = {
     telnet.foreach{ t=>
       if (t.id == id) {
+        sendQueue.clear()
         console.addLine(ScalaUtils.encodeColor("0") + "--disconnected--")
         withClient(_.onDisconnect(id))
       }
@@ -316,7 +383,8 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
   }
 
   /**
-    * <p>Send text now, without using event loop.</p>
+    * <p>Send text now, without using event loop.  Every command goes out in one write, unless sends are paced or
+    * commands are still queued, then they're queued behind them.</p>
     *
     * <p><STRONG>This should only be called by the event thread!</STRONG></p>
     *
@@ -324,15 +392,55 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
   private def sendNow(cmds: String, silent: Boolean) : Unit = {
     telnet match {
       case Some(t) =>
-        cmds.split("\n").foreach { cmd =>
-          t.send(cmd + "\n")
-          if (!silent) console.echoCommand(cmd)
+        val split = cmds.split("\n")
+
+        if (profileConfig.telnetConfig.paceCommands <= 0 && sendQueue.isEmpty) {
+          t.send(split.mkString("", "\n", "\n"))
+          if (!silent) split.foreach(console.echoCommand)
+        } else {
+          split.foreach(cmd => sendQueue.enqueue((cmd, silent)))
+          sendQueued(paced = true)
         }
 
       case None => slog.info(s"command ignored: $cmds")
     }
   }
 
+  /**
+    * <p>Send queued commands in one write, no more than paceCommands per paceMillis if paced, and wake up once the
+    * interval is over to send the rest.</p>
+    *
+    * <p><STRONG>This should only be called by the event thread!</STRONG></p>
+    */
+  private def sendQueued(paced: Boolean): Unit = {
+    telnet.foreach { t =>
+      val limit = profileConfig.telnetConfig.paceCommands
+      val interval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, profileConfig.telnetConfig.paceMillis))
+      val now = System.nanoTime
+
+      if (now - paceWindowStart >= interval) {
+        paceWindowStart = now
+        paceSent = 0
+      }
+
+      val batch = new StringBuilder
+
+      while (sendQueue.nonEmpty && (!paced || limit <= 0 || paceSent < limit)) {
+        val (cmd, silent) = sendQueue.dequeue()
+        batch.append(cmd).append('\n')
+        if (!silent) console.echoCommand(cmd)
+        paceSent += 1
+      }
+
+      if (batch.nonEmpty) t.send(batch.toString)
+
+      if (sendQueue.nonEmpty && !pacePending) {
+        pacePending = true
+        offerAt(paceWindowStart + interval, PacedSend())
+      }
+    }
+  }
+
   /**
     * <p><STRONG>This should *only* be called by the client.</STRONG></p>
     */
@@ -363,40 +471,7 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
       return false
     }
 
-    def convertToComponents(windowReference: WindowReference): (Component, List[(JSplitPane, Float)]) = {
-      windowReference match {
-        case sw: SplitWindow =>
-
-          val (c1, l1) = convertToComponents(sw.getTopLeft)
-          val (c2, l2) = convertToComponents(sw.getBotRight)
-
-          val splitPanel = new JSplitPane()
-          splitPanel.setDividerSize(2)
-          splitPanel.setBorder(BorderFactory.createEmptyBorder())
-
-          if (sw.isHorizontal) {
-            splitPanel.setOrientation(JSplitPane.HORIZONTAL_SPLIT)
-            splitPanel.setLeftComponent(c1)
-            splitPanel.setRightComponent(c2)
-          } else {
-            splitPanel.setOrientation(JSplitPane.VERTICAL_SPLIT)
-            splitPanel.setTopComponent(c1)
-            splitPanel.setRightComponent(c2)
-          }
-
-          (splitPanel, l1 ++ l2 :+ (splitPanel, sw.getDividerLocation))
-        case _ => (windows(windowReference.getName), List.empty)
-      }
-    }
-
-    val (component, dividerLocations) = convertToComponents(windowReference)
-
-    profilePanel.setContents(component)
-
-    // really terrible hack
-    Util.invokeLater(10, () => SwingUtilities.invokeLater(() => {
-      dividerLocations.foreach(s => s._1.setDividerLocation(s._2))
-    }))
+    layoutWindows(windowReference)
 
     true
   }
@@ -413,11 +488,7 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
     * <p><STRONG>This should *only* be called by the client.</STRONG></p>
     */
   private[profile] def createTextWindow(name: String): TextWindowInterface = {
-    windows.getOrElseUpdate(name, {
-      val sta = new SplittableTextArea(profileConfig, this)
-      sta.setActiveFont(profileConfig.consoleWindow.font.toFont)
-      sta
-    })
+    windows.getOrElseUpdate(name, newTextWindow(name))
   }
 
   /**
@@ -437,4 +508,12 @@ class Profile(private var profileConfig: ProfileConfig, mainWindow: MainWindow)
 
 object Profile {
   val log = Logger(LoggerFactory.getLogger(Profile.getClass))
+
+  /**
+    * <p>Delivers events offered for later, like paced sends and fragment timeouts.  Started the first time one is
+    * needed.</p>
+    */
+  private lazy val timer = new TimingWheel[(Profile, ProfileEvent)]("profile events")(_.foreach {
+    case (profile, event) => profile.offer(event)
+  })
 }
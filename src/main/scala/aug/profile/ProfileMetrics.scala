@@ -0,0 +1,126 @@
+package aug.profile
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import javax.management.ObjectName
+
+import aug.misc.{Histogram, Meter}
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.jdk.CollectionConverters._
+import scala.util.{Failure, Success, Try}
+
+/**
+  * <p>The JMX view of {@link ProfileMetrics}.  Times are in microseconds.</p>
+  */
+trait ProfileMetricsMBean {
+  def getBytesRead: Long
+  def getBytesPerSecond: Double
+  def getLinesRead: Long
+  def getLinesPerSecond: Double
+  def getEventQueueDepth: Int
+  def getDecodeP99Micros: Long
+  def getInflateP99Micros: Long
+  def getProcessTextP99Micros: Long
+  def getPaintP50Micros: Long
+  def getPaintP99Micros: Long
+  def getClientP99Micros: Long
+  def getClientMaxMicros: Long
+
+  /**
+    * <p>Every metric, one per line.</p>
+    */
+  def getReport: String
+
+  def reset(): Unit
+}
+
+object ProfileMetrics {
+  val log = Logger(LoggerFactory.getLogger(ProfileMetrics.getClass))
+}
+
+/**
+  * <p>Where a profile's time goes, stage by stage: bytes read from the socket, telnet decoding and MCCP inflating,
+  * turning text into lines, client callbacks, and painting the console.  Recording never allocates once a client
+  * callback has been seen, so the metrics are always on.  Registered as an MBean under aug:type=Profile while the
+  * profile is open.</p>
+  */
+class ProfileMetrics(name: String, queueDepth: () => Int) extends ProfileMetricsMBean with AutoCloseable {
+  import ProfileMetrics.log
+
+  val bytesRead = new Meter
+  val linesRead = new Meter
+  val decode = new Histogram
+  val inflate = new Histogram
+  val processText = new Histogram
+  val paint = new Histogram
+
+  private val clientCalls = new ConcurrentHashMap[String, Histogram]()
+
+  /**
+    * <p>Latencies of one kind of client callback, like handleLine.</p>
+    */
+  def client(callback: String): Histogram = {
+    val histogram = clientCalls.get(callback)
+    if (histogram != null) histogram else clientCalls.computeIfAbsent(callback, _ => new Histogram)
+  }
+
+  private val objectName = new ObjectName(s"aug:type=Profile,name=${ObjectName.quote(name)}")
+
+  Try(ManagementFactory.getPlatformMBeanServer.registerMBean(this, objectName)) match {
+    case Failure(e) => log.warn(s"failed to register metrics for $name", e)
+    case Success(_) =>
+  }
+
+  private def clientHistograms: Seq[(String, Histogram)] = clientCalls.asScala.toSeq.sortBy(_._1)
+
+  override def getBytesRead: Long = bytesRead.count
+  override def getBytesPerSecond: Double = bytesRead.rate
+  override def getLinesRead: Long = linesRead.count
+  override def getLinesPerSecond: Double = linesRead.rate
+  override def getEventQueueDepth: Int = queueDepth()
+  override def getDecodeP99Micros: Long = decode.percentile(99)
+  override def getInflateP99Micros: Long = inflate.percentile(99)
+  override def getProcessTextP99Micros: Long = processText.percentile(99)
+  override def getPaintP50Micros: Long = paint.percentile(50)
+  override def getPaintP99Micros: Long = paint.percentile(99)
+  override def getClientP99Micros: Long = (0L +: clientHistograms.map(_._2.percentile(99))).max
+  override def getClientMaxMicros: Long = (0L +: clientHistograms.map(_._2.maxValue)).max
+
+  /**
+    * <p>Every metric by name, with histograms as count, mean, p50, p99 and max.</p>
+    */
+  def snapshot: Seq[(String, Long)] = {
+    def histogram(prefix: String, h: Histogram) = Seq(
+      s"$prefix.count" -> h.count,
+      s"$prefix.meanMicros" -> Math.round(h.mean),
+      s"$prefix.p50Micros" -> h.percentile(50),
+      s"$prefix.p99Micros" -> h.percentile(99),
+      s"$prefix.maxMicros" -> h.maxValue
+    )
+
+    Seq(
+      "bytesRead" -> bytesRead.count,
+      "bytesPerSecond" -> Math.round(bytesRead.rate),
+      "linesRead" -> linesRead.count,
+      "linesPerSecond" -> Math.round(linesRead.rate),
+      "eventQueueDepth" -> queueDepth().toLong
+    ) ++
+      histogram("decode", decode) ++
+      histogram("inflate", inflate) ++
+      histogram("processText", processText) ++
+      histogram("paint", paint) ++
+      clientHistograms.flatMap { case (callback, h) => histogram(s"client.$callback", h) }
+  }
+
+  override def getReport: String = snapshot.map { case (k, v) => s"$k: $v" }.mkString("\n")
+
+  override def reset(): Unit = {
+    (Seq(decode, inflate, processText, paint) ++ clientHistograms.map(_._2)).foreach(_.reset())
+  }
+
+  override def close(): Unit = {
+    Try(ManagementFactory.getPlatformMBeanServer.unregisterMBean(objectName))
+  }
+}
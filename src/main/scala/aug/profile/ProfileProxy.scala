@@ -1,6 +1,7 @@
 package aug.profile
 
 import java.io.File
+import java.lang
 import java.lang.Boolean
 import java.util
 
@@ -16,6 +17,8 @@ class ProfileProxy(profile: Profile) extends ProfileInterface {
 
   override def send(cmds: String): Unit = offer(SendData(cmds))
   override def sendSilently(cmds: String): Unit = offer(SendData(cmds, true))
+  override def flushSendQueue(): Unit = profile.flushSendQueue()
+  override def clearSendQueue(): Unit = profile.clearSendQueue()
   override def setWindowGraph(windowReference: WindowReference): Boolean = profile.setWindowGraph(windowReference)
   override def getWindowNames: util.List[String] = profile.getWindowNames
   override def createTextWindow(name: String): TextWindowInterface = profile.createTextWindow(name)
@@ -31,4 +34,18 @@ class ProfileProxy(profile: Profile) extends ProfileInterface {
   override def clientStop(): Unit = profile.clientStop()
   override def clientRestart(): Unit = profile.clientRestart()
   override def getScheduler(reloaders: Array[RunnableReloader[_ <: Runnable]]): SchedulerInterface = profile.getScheduler(reloaders)
+  override def subscribeGmcp(packagePrefix: String): Unit = profile.gmcp.subscribe(packagePrefix)
+  override def unsubscribeGmcp(packagePrefix: String): Unit = profile.gmcp.unsubscribe(packagePrefix)
+  override def getGmcp(packageName: String): GmcpMessage = profile.gmcp.get(packageName).orNull
+  override def getMetrics: util.Map[String, lang.Long] = {
+    val snapshot = new util.LinkedHashMap[String, lang.Long]()
+    profile.metrics.snapshot.foreach { case (key, value) => snapshot.put(key, value) }
+    snapshot
+  }
+  override def getEventQueueDepths: util.Map[String, Integer] = {
+    val depths = new util.LinkedHashMap[String, Integer]()
+    val current = profile.eventQueueDepths
+    ProfileEvent.LaneNames.foreach(lane => depths.put(lane, current(lane)))
+    depths
+  }
 }
@@ -0,0 +1,21 @@
+package aug.profile
+
+import aug.script.framework.TextWindowInterface
+
+/**
+  * <p>A text window of a profile, whether painted in Swing or only kept in memory.</p>
+  */
+trait ProfileWindow extends TextWindowInterface {
+  def setProfileConfig(profileConfig: ProfileConfig): Unit
+}
+
+/**
+  * <p>The console of a profile, where text from the server becomes lines for the client and the logs.</p>
+  */
+trait ProfileConsole extends ProfileWindow with AutoCloseable {
+  def addLine(line: String, sendToClient: Boolean = false): Unit
+  def processText(txt: String, ga: Boolean): Unit
+  def fragmentQuiet(): Unit
+  def echoCommand(cmd: String): Unit
+  def log(on: Boolean, color: Boolean): Unit
+}
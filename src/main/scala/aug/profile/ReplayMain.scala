@@ -0,0 +1,112 @@
+package aug.profile
+
+import java.io.File
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import aug.io._
+
+/**
+  * <p>Replays a session recording through a headless copy of a profile, then prints how long it took and the
+  * profile's metrics.  By default the recording is fed straight into a Telnet, which measures decoding, text
+  * processing and the client without the network.  With --server it's served by a loopback ReplayServer the
+  * profile connects to, so the whole path from the socket on is exercised.  Replays run as fast as possible
+  * unless --real-time is given.</p>
+  *
+  * <p>Recordings are made by profiles with session recording turned on in their logging settings.</p>
+  */
+object ReplayMain {
+  import SessionRecording.log
+
+  private val StallSeconds = 10
+
+  private def usage(): Nothing = {
+    System.err.println("usage: ReplayMain <recording> <profile> [--server] [--real-time]")
+    sys.exit(1)
+  }
+
+  def main(args: Array[String]): Unit = {
+    System.setProperty("java.awt.headless", "true")
+
+    val (flags, positional) = args.toList.partition(_.startsWith("--"))
+    if (positional.size != 2 || flags.exists(f => f != "--server" && f != "--real-time")) usage()
+
+    val recording = new File(positional.head)
+    val server = flags.contains("--server")
+    val realTime = flags.contains("--real-time")
+
+    ConfigManager.load()
+
+    val profileConfig = ConfigManager.getProfile(positional(1)).getOrElse {
+      System.err.println(s"no profile named ${positional(1)}")
+      usage()
+    }
+
+    // never record a replay
+    val replayConfig = profileConfig.copy(logConfig = profileConfig.logConfig.copy(recordSession = false))
+
+    val start = System.nanoTime
+    val (profile, bytes) = if (server) replayServed(recording, replayConfig, realTime) else {
+      replayDirect(recording, replayConfig, realTime)
+    }
+
+    awaitHandled(profile, bytes)
+    val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime - start)
+
+    println(s"replayed $bytes bytes in $elapsed ms")
+    println(profile.metrics.getReport)
+
+    profile.close()
+    // only replayServed starts the connection manager
+    if (server) ConnectionManager.close()
+    sys.exit(0)
+  }
+
+  /**
+    * <p>Wait until the profile thread has handled everything replayed.  Telnet counts bytes once they're decoded
+    * and offered, and the data lane is handled in order, so a barrier offered after the last byte is counted is
+    * reached last.</p>
+    */
+  private def awaitHandled(profile: Profile, bytes: Long): Unit = {
+    var read = profile.metrics.bytesRead.count
+    var lastProgress = System.nanoTime
+
+    while (read < bytes && System.nanoTime - lastProgress < TimeUnit.SECONDS.toNanos(StallSeconds)) {
+      Thread.sleep(10)
+      val now = profile.metrics.bytesRead.count
+      if (now != read) lastProgress = System.nanoTime
+      read = now
+    }
+
+    if (read < bytes) log.error(s"replay stalled after $read of $bytes bytes")
+
+    val barrier = new CountDownLatch(1)
+    profile.offer(DataBarrier(barrier))
+    barrier.await()
+  }
+
+  private def replayDirect(recording: File, profileConfig: ProfileConfig, realTime: Boolean): (Profile, Long) = {
+    val config = profileConfig.copy(telnetConfig = profileConfig.telnetConfig.copy(host = "localhost"))
+    val profile = new HeadlessProfile(config, new HeadlessSystemLog)
+    val telnet = new Telnet(profile, config)
+
+    val bytes = SessionRecording.replay(recording, realTime)(telnet.handleIncoming)
+    telnet.close()
+    (profile, bytes)
+  }
+
+  private def replayServed(recording: File, profileConfig: ProfileConfig, realTime: Boolean): (Profile, Long) = {
+    ConnectionManager.start()
+
+    val replayServer = new ReplayServer(recording, realTime)
+    ConnectionManager.register(replayServer)
+
+    val config = profileConfig.copy(telnetConfig = profileConfig.telnetConfig.copy(host = "localhost",
+      port = replayServer.port))
+    val profile = new HeadlessProfile(config, new HeadlessSystemLog)
+    profile.connect()
+
+    if (!replayServer.awaitServed(1, TimeUnit.DAYS)) log.error("replay did not finish")
+    replayServer.close()
+    (profile, replayServer.bytesServed)
+  }
+}
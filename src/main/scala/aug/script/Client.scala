@@ -3,7 +3,7 @@ package aug.script
 import java.io.File
 import java.lang.management.{ManagementFactory, ThreadMXBean}
 import java.net.{URL, URLClassLoader}
-import java.util.concurrent.{Callable, Executors, TimeUnit}
+import java.util.concurrent.{Callable, ConcurrentHashMap, Executors, TimeUnit}
 
 import aug.profile._
 import aug.script.framework._
@@ -97,27 +97,73 @@ private class ScriptLoader(val urls: Array[URL]) extends ClassLoader(Thread.curr
 
 }
 
+/**
+  * <p>Watches clients that are called directly on the profile thread.  A call that runs longer than the client
+  * timeout is flagged and its thread interrupted; the call then fails with a ClientTimeoutException once it
+  * returns.</p>
+  */
+private object ClientWatchdog {
+  private val SampleMillis = 50
+
+  private val clients = ConcurrentHashMap.newKeySet[Client]()
+
+  private lazy val executor = {
+    val executor = Executors.newSingleThreadScheduledExecutor { r =>
+      val thread = new Thread(r, "ClientWatchdog")
+      thread.setDaemon(true)
+      thread
+    }
+
+    executor.scheduleAtFixedRate(() => {
+      val now = System.nanoTime
+      clients.forEach(_.checkOverrun(now))
+    }, SampleMillis, SampleMillis, TimeUnit.MILLISECONDS)
+
+    executor
+  }
+
+  def register(client: Client): Unit = {
+    executor
+    clients.add(client)
+  }
+
+  def unregister(client: Client): Unit = clients.remove(client)
+}
+
 /**
   * <p>
-  *   Client wrapper class that uses a thread pool to prevent tying up the profile event thread while calling client
-  *   methods more than the configured timeout.  If the timeout is reached, the client thread will be interrupted and
-  *   the client can expect to be shutdown quickly after that.
+  *   Client wrapper class that keeps client calls from tying up the profile event thread for more than the
+  *   configured timeout.  By default calls run on a client thread which the profile thread waits on.  With the
+  *   "direct" execution mode the profile thread calls the client itself, saving two context switches per call,
+  *   and {@link ClientWatchdog} enforces the timeout.  Either way, if the timeout is reached, the thread running
+  *   the client is interrupted and the client can expect to be shutdown quickly after that.
   * </p>
   */
 class Client private[script](profile: Profile, profileConfig: ProfileConfig, client: ClientInterface) extends AutoCloseable
   with ClientInterface {
   import ScriptLoader.log
 
-  private var threadId: Option[Long] = None
-  private val executorService = Executors.newFixedThreadPool(1)
+  private val direct = profileConfig.javaConfig.clientExecution == "direct"
+  private val timeoutNanos = TimeUnit.MILLISECONDS.toNanos(profileConfig.javaConfig.clientTimeout)
+
+  @volatile private var threadId: Option[Long] = None
+  private val executorService = if (direct) None else Some(Executors.newFixedThreadPool(1))
   private var scheduler: Option[Scheduler] = None
   private var inError: Boolean = false
 
-  executorService.submit(new Runnable {
+  // direct calls, the watchdog samples callStart and sets overrun under callLock
+  private val callLock = new Object
+  @volatile private var callStart = 0L
+  private var callThread: Thread = _
+  private var overrun: Option[String] = None
+
+  executorService.foreach(_.submit(new Runnable {
     override def run(): Unit = {
       threadId = Some(Thread.currentThread().getId)
     }
-  })
+  }))
+
+  if (direct) ClientWatchdog.register(this)
 
   def getScheduler(state: List[String], reloaders: Seq[RunnableReloader[_ <: Runnable]]): Scheduler = {
     scheduler.getOrElse {
@@ -131,9 +177,12 @@ class Client private[script](profile: Profile, profileConfig: ProfileConfig, cli
   def schedulerState: List[String] = scheduler.map(_.save).getOrElse(List.empty)
 
   override def close(): Unit = {
-    executorService.shutdownNow()
-    if (!executorService.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
-      log.error("failed to shutdown client executor service")
+    ClientWatchdog.unregister(this)
+    executorService.foreach { executorService =>
+      executorService.shutdownNow()
+      if (!executorService.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
+        log.error("failed to shutdown client executor service")
+      }
     }
     scheduler.foreach(_.close())
   }
@@ -144,13 +193,27 @@ class Client private[script](profile: Profile, profileConfig: ProfileConfig, cli
       .getOrElse("unable to acquire thread dump")
   }
 
+  /**
+    * <p>Called by the watchdog, flags and interrupts a direct call that has run past the timeout.</p>
+    */
+  private[script] def checkOverrun(now: Long): Unit = {
+    val start = callStart
+    if (start != 0 && now - start > timeoutNanos) callLock.synchronized {
+      if (callStart == start && overrun.isEmpty) {
+        threadId = Some(callThread.getId)
+        overrun = Some(threadInfo)
+        callThread.interrupt()
+      }
+    }
+  }
+
   override def shutdown(): ReloadData = {
 
     val m: ReloadData = try {
       executeOnThread(client.shutdown(), cancelOnTimeout = false)
     } catch {
-      case e: TimeoutException =>
-        profile.slog.error(s"client timed out while shutting down (very bad!)\n$threadInfo")
+      case e: ClientTimeoutException =>
+        profile.slog.error(s"client timed out while shutting down (very bad!)\n${e.tinfo}")
         new ReloadData
       case e: Throwable =>
         profile.handleClientException(e)
@@ -161,13 +224,51 @@ class Client private[script](profile: Profile, profileConfig: ProfileConfig, cli
     if (m == null) new ReloadData else m
   }
 
-  private def execute[ReturnType](f: => ReturnType): ReturnType = {
+  /**
+    * <p>Call the client, recording the latency under the callback's name.</p>
+    */
+  private def execute[ReturnType](callback: String)(f: => ReturnType): ReturnType = {
     if (inError) throw new RuntimeException("client is in error")
 
-    executeOnThread(f, cancelOnTimeout = true)
+    profile.metrics.client(callback).time(executeOnThread(f, cancelOnTimeout = true))
   }
 
   private def executeOnThread[ReturnType](f: => ReturnType, cancelOnTimeout: Boolean): ReturnType = {
+    if (direct) executeDirect(f) else executeOnClientThread(f, cancelOnTimeout)
+  }
+
+  private def executeDirect[ReturnType](f: => ReturnType): ReturnType = {
+    // a nested call is already timed by the outer one
+    if (callStart != 0 && (callThread eq Thread.currentThread)) return f
+
+    callLock.synchronized {
+      callThread = Thread.currentThread
+      overrun = None
+      callStart = Math.max(1, System.nanoTime)
+    }
+
+    val result = Try(f)
+
+    val timedOut = callLock.synchronized {
+      callStart = 0
+      overrun
+    }
+
+    timedOut match {
+      case Some(tinfo) =>
+        Thread.interrupted()
+        inError = true
+        throw ClientTimeoutException(tinfo)
+
+      case None => result match {
+        case Success(rv) => rv
+        case Failure(e) => clientFailed(e)
+      }
+    }
+  }
+
+  private def executeOnClientThread[ReturnType](f: => ReturnType, cancelOnTimeout: Boolean): ReturnType = {
+    val executorService = this.executorService.get
     val future = executorService.submit(new Callable[ReturnType] {
       override def call(): ReturnType = f
     })
@@ -180,21 +281,47 @@ class Client private[script](profile: Profile, profileConfig: ProfileConfig, cli
         val to = ClientTimeoutException(threadInfo)
         if (cancelOnTimeout) future.cancel(true)
         inError = true
-        throw e
+        throw to
 
-      case Failure(e) =>
-        profile.handleClientException(e)
-        inError = true
-        throw e
+      case Failure(e) => clientFailed(e)
+    }
+  }
+
+  /**
+    * <p>Report an exception the client threw and put the client in error.</p>
+    */
+  private def clientFailed(e: Throwable): Nothing = {
+    profile.handleClientException(e)
+    inError = true
+    throw e
+  }
+
+  def handleEvent(runnable: Runnable): Unit = execute("event")(runnable.run())
+
+  /**
+    * <p>Run a batch of events, each timed and held to the client timeout on its own, so many quick events due in
+    * the same tick never add up to a timeout.  One throwing doesn't skip the rest: once the batch is done the first
+    * exception puts the client in error, with any later ones suppressed in it.</p>
+    */
+  def handleEvents(runnables: Seq[Runnable]): Unit = {
+    val errors = runnables.flatMap(runnable => execute("event")(Try(runnable.run()).failed.toOption))
+
+    errors.headOption.foreach { first =>
+      errors.tail.foreach(first.addSuppressed)
+      clientFailed(first)
     }
   }
 
-  def handleEvent(runnable: Runnable): Unit = execute(runnable.run())
-  override def init(profile: ProfileInterface, reloadData: ReloadData): Unit = execute(client.init(profile, reloadData))
-  override def onConnect(id: Long, url: String, port: Int): Unit = execute(client.onConnect(id, url, port))
-  override def handleLine(lineEvent: LineEvent): Boolean = execute(client.handleLine(lineEvent))
-  override def handleFragment(lineEvent: LineEvent): Unit = execute(client.handleFragment(lineEvent))
-  override def onDisconnect(id: Long): Unit = execute(client.onDisconnect(id))
-  override def handleGmcp(s: String): Unit = execute(client.handleGmcp(s))
-  override def handleCommand(s: String): Boolean = execute(client.handleCommand(s))
+  override def init(profile: ProfileInterface, reloadData: ReloadData): Unit =
+    execute("init")(client.init(profile, reloadData))
+  override def onConnect(id: Long, url: String, port: Int): Unit = execute("onConnect")(client.onConnect(id, url, port))
+  override def handleLine(lineEvent: LineEvent): Boolean = execute("handleLine")(client.handleLine(lineEvent))
+  override def handleLines(lineEvents: Array[LineEvent]): Array[Boolean] =
+    execute("handleLines")(client.handleLines(lineEvents))
+  override def handleFragment(lineEvent: LineEvent): Unit = execute("handleFragment")(client.handleFragment(lineEvent))
+  override def onDisconnect(id: Long): Unit = execute("onDisconnect")(client.onDisconnect(id))
+  override def handleGmcp(s: String): Unit = execute("handleGmcp")(client.handleGmcp(s))
+  override def handleGmcpMessage(message: GmcpMessage): Unit =
+    execute("handleGmcpMessage")(client.handleGmcpMessage(message))
+  override def handleCommand(s: String): Boolean = execute("handleCommand")(client.handleCommand(s))
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package aug.script
 
 import java.lang
-import java.util.concurrent._
+import java.util.concurrent.{ConcurrentHashMap, RejectedExecutionException, TimeUnit}
 import java.util.concurrent.atomic.AtomicBoolean
 
 import aug.profile.{ClientEvent, Profile}
@@ -10,63 +10,108 @@ import aug.script.framework.{FutureEvent, RunnableReloader, SchedulerInterface}
 import com.typesafe.scalalogging.Logger
 import org.slf4j.LoggerFactory
 
-import scala.collection.mutable
+import scala.jdk.CollectionConverters._
 
 trait ClientCaller {
   def callOnClient(): Unit
 }
 
+/**
+  * <p>Runs the client's timers.  Timeouts are kept in a {@link TimingWheel} shared by every scheduler and everything
+  * of one scheduler that comes due in the same tick is offered to its profile as one event, which runs it all on
+  * the client thread in one call.</p>
+  */
 class Scheduler(client: Client, profile: Profile, reloaders: Seq[RunnableReloader[_ <: Runnable]])
   extends SchedulerInterface with AutoCloseable {
 
   private val log = Scheduler.log
-  private val events = mutable.Set[Event]()
-  private val executor = Executors.newScheduledThreadPool(1)
+  import Scheduler.wheel
+
+  private val events = ConcurrentHashMap.newKeySet[Event]()
+  private val periodics = ConcurrentHashMap.newKeySet[Event]()
+  @volatile private var closed = false
   private val reloaderMap: Map[String, RunnableReloader[_]] = reloaders.map(r => r.runnableType().getCanonicalName -> r).toMap
 
-  case class Event(timeout: Long, runnable: Runnable, periodic: Boolean = false) extends Runnable
-    with ClientCaller with FutureEvent {
+  /**
+    * <p>A scheduled runnable.  One shot events stay in events, and so are saved, from when they're scheduled until
+    * they run or are cancelled.</p>
+    */
+  final class Event(val timeout: Long, val runnable: Runnable, period: Long = 0) extends FutureEvent {
+    private val cancellable = new AtomicBoolean(true)
+    @volatile private var handle: Option[wheel.Timeout] = None
+    private var deadline = 0L
 
-    if (!periodic) events.add(this)
+    def periodic: Boolean = period > 0
 
-    private val cancellable = new AtomicBoolean(true)
+    private[Scheduler] def scheduler: Scheduler = Scheduler.this
+
+    private[Scheduler] def schedule(deadlineNanos: Long): Unit = {
+      deadline = deadlineNanos
+      handle = Some(wheel.scheduleAt(deadlineNanos, this))
+    }
+
+    private[Scheduler] def reschedule(): Unit = {
+      if (cancellable.get && !closed) schedule(deadline + TimeUnit.MILLISECONDS.toNanos(period))
+    }
+
+    /**
+      * <p>Take the event off the wheel without cancelling it, so it's still saved.</p>
+      */
+    private[Scheduler] def unschedule(): Unit = handle.foreach(_.cancel())
 
-    override def run(): Unit = {
-      if (periodic && !cancellable.get) {
-        // the scheduled task will stop executing.
-        throw new RuntimeException("")
+    private[Scheduler] def shouldRun: Boolean = {
+      if (periodic) cancellable.get else {
+        events.remove(this)
+        cancellable.compareAndSet(true, false)
       }
+    }
 
-      profile.offer(ClientEvent(this))
+    def saveable: Boolean = cancellable.get
+
+    override def cancel(): lang.Boolean = {
+      if (cancellable.compareAndSet(true, false)) {
+        handle.foreach(_.cancel())
+        events.remove(this)
+        periodics.remove(this)
+        true
+      } else false
     }
+  }
 
+  /**
+    * <p>The events that came due in one tick.</p>
+    */
+  private class EventBatch(due: Seq[Scheduler#Event]) extends ClientCaller {
     override def callOnClient(): Unit = {
-      if (!periodic)  events.remove(this)
+      val toRun = due.filter(_.shouldRun).map(_.runnable)
 
-      if (periodic || cancellable.compareAndSet(true, false)) {
+      if (toRun.nonEmpty) {
         try {
-          client.handleEvent(runnable)
+          client.handleEvents(toRun)
         } catch {
           case rej: RejectedExecutionException => // client is stale
           case e: Throwable => throw e
         }
       }
     }
+  }
 
-    def saveable: Boolean = cancellable.get
+  private def offer(due: Seq[Scheduler#Event]): Unit = if (!closed) {
+    due.foreach(event => if (event.periodic) event.reschedule())
+    profile.offer(ClientEvent(new EventBatch(due)))
+  }
 
-    override def cancel(): lang.Boolean = {
-      cancellable.compareAndSet(true, false)
-    }
+  private def schedule(event: Event, delay: Long): Event = {
+    if (event.periodic) periodics.add(event) else events.add(event)
+    event.schedule(System.nanoTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)))
+    event
   }
 
   override def in(timeout: Long, runnable: Runnable): FutureEvent = {
-    val event = Event(System.currentTimeMillis() + timeout, runnable)
-    executor.schedule(event, timeout, TimeUnit.MILLISECONDS)
-    event
+    schedule(new Event(System.currentTimeMillis() + timeout, runnable), timeout)
   }
 
-  def save: List[String] = events.toList.filter(_.saveable).flatMap(saveEvent)
+  def save: List[String] = events.asScala.toList.filter(_.saveable).sortBy(_.timeout).flatMap(saveEvent)
 
   private def saveEvent(event: Event): Option[String] = {
     val cn = event.runnable.getClass.getCanonicalName
@@ -90,7 +135,7 @@ class Scheduler(client: Client, profile: Profile, reloaders: Seq[RunnableReloade
         val delay = Math.max(0, scheduledTime - System.currentTimeMillis())
         try {
           val run: Runnable = reloader.stringToRunnable(list.last)
-          executor.schedule(Event(scheduledTime, run), delay, TimeUnit.MILLISECONDS)
+          schedule(new Event(scheduledTime, run), delay)
         } catch {
           case e: Throwable =>
             profile.slog.error("exception hydrating runnable from string", e)
@@ -100,19 +145,21 @@ class Scheduler(client: Client, profile: Profile, reloaders: Seq[RunnableReloade
   }
 
   override def close(): Unit = {
-    executor.shutdownNow()
-    if (!executor.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
-      log.error("failed to shutdown client executor service")
-    }
+    closed = true
+    events.asScala.foreach(_.unschedule())
+    periodics.asScala.foreach(_.unschedule())
   }
 
   override def every(initialDelay: Long, period: Long, runnable: Runnable): FutureEvent = {
-    val event = Event(0, runnable, periodic = true)
-    executor.scheduleAtFixedRate(event, initialDelay, period, TimeUnit.MILLISECONDS)
-    event
+    if (period <= 0) throw new IllegalArgumentException("period must be positive")
+    schedule(new Event(0, runnable, period), initialDelay)
   }
 }
 
 object Scheduler {
   val log = Logger(LoggerFactory.getLogger(Scheduler.getClass))
+
+  private lazy val wheel = new TimingWheel[Scheduler#Event]("scheduler")({ due =>
+    due.groupBy(_.scheduler).foreach { case (scheduler, events) => scheduler.offer(events) }
+  })
 }
\ No newline at end of file
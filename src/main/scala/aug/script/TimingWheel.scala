@@ -0,0 +1,159 @@
+package aug.script
+
+import java.util.concurrent.TimeUnit
+
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+object TimingWheel {
+  val log = Logger(LoggerFactory.getLogger(TimingWheel.getClass))
+}
+
+/**
+  * <p>Hashed timing wheel.  Time is cut into ticks of tickMillis and a timeout due at tick t is kept in slot
+  * t % wheelSize, in a doubly linked list, so scheduling and cancelling are O(1) no matter how many timeouts are
+  * pending.  A ticker thread visits one slot per tick and hands every timeout that came due to onDue in one batch.
+  * Timeouts more than one rotation away stay in their slot until the wheel comes round to their tick.</p>
+  *
+  * <p>Timeouts fire up to one tick late, never early.  The ticker waits without ticking while nothing is pending,
+  * so an idle wheel costs nothing.  Thread safe.</p>
+  */
+class TimingWheel[T](name: String, tickMillis: Long = 10, wheelSize: Int = 512)(onDue: Seq[T] => Unit)
+  extends AutoCloseable {
+  import TimingWheel.log
+
+  require(tickMillis > 0, "tick must be positive")
+  require(Integer.bitCount(wheelSize) == 1, "wheel size must be a power of two")
+
+  final class Timeout private[TimingWheel](val tick: Long, val task: T) {
+    private[TimingWheel] var prev: Timeout = _
+    private[TimingWheel] var next: Timeout = _
+
+    /**
+      * <p>Remove the timeout from the wheel.  Returns false if it already fired or was cancelled.</p>
+      */
+    def cancel(): Boolean = TimingWheel.this.synchronized {
+      if (prev == null) false else {
+        unlink(this)
+        pending -= 1
+        true
+      }
+    }
+  }
+
+  private val mask = wheelSize - 1
+  private val tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis)
+  private val start = System.nanoTime
+  private val slots = Array.fill(wheelSize)(sentinel())
+  private var processed = 0L
+  private var pending = 0
+
+  private val thread = new Thread(() => run(), s"TimingWheel: $name")
+  thread.setDaemon(true)
+  thread.start()
+
+  private def sentinel(): Timeout = {
+    val head = new Timeout(-1, null.asInstanceOf[T])
+    head.prev = head
+    head.next = head
+    head
+  }
+
+  private def unlink(timeout: Timeout): Unit = {
+    timeout.prev.next = timeout.next
+    timeout.next.prev = timeout.prev
+    timeout.prev = null
+    timeout.next = null
+  }
+
+  private def tickAt(nanos: Long): Long = (nanos - start + tickNanos - 1) / tickNanos
+
+  /**
+    * <p>Run the task after delayMillis.</p>
+    */
+  def schedule(delayMillis: Long, task: T): Timeout = {
+    scheduleAt(System.nanoTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)), task)
+  }
+
+  /**
+    * <p>Run the task once System.nanoTime reaches deadlineNanos.</p>
+    */
+  def scheduleAt(deadlineNanos: Long, task: T): Timeout = synchronized {
+    val timeout = new Timeout(Math.max(processed + 1, tickAt(deadlineNanos)), task)
+    val head = slots((timeout.tick & mask).toInt)
+    timeout.prev = head.prev
+    timeout.next = head
+    head.prev.next = timeout
+    head.prev = timeout
+    pending += 1
+    if (pending == 1) notifyAll()
+    timeout
+  }
+
+  def size: Int = synchronized(pending)
+
+  /**
+    * <p>Remove and return every timeout due by the tick.</p>
+    */
+  private def expire(now: Long): Seq[T] = synchronized {
+    val due = Seq.newBuilder[T]
+
+    // catch up on ticks missed while the thread was descheduled, a full rotation covers every slot
+    val from = Math.max(processed + 1, now - wheelSize + 1)
+
+    var tick = from
+    while (tick <= now) {
+      val head = slots((tick & mask).toInt)
+      var timeout = head.next
+
+      while (timeout ne head) {
+        val next = timeout.next
+        if (timeout.tick <= now) {
+          unlink(timeout)
+          pending -= 1
+          due += timeout.task
+        }
+        timeout = next
+      }
+
+      tick += 1
+    }
+
+    processed = now
+    due.result()
+  }
+
+  private def awaitPending(): Unit = synchronized {
+    while (pending == 0) wait()
+  }
+
+  private def run(): Unit = {
+    try {
+      while (!Thread.interrupted()) {
+        awaitPending()
+
+        val now = (System.nanoTime - start) / tickNanos
+        val due = expire(now)
+
+        if (due.nonEmpty) {
+          try {
+            onDue(due)
+          } catch {
+            case e: Throwable => log.error(s"error handing off due timeouts of $name", e)
+          }
+        }
+
+        val sleep = (now + 1) * tickNanos - (System.nanoTime - start)
+        if (sleep > 0) TimeUnit.NANOSECONDS.sleep(sleep)
+      }
+    } catch {
+      case _: InterruptedException =>
+    }
+  }
+
+  override def close(): Unit = {
+    thread.interrupt()
+    thread.join(1000)
+    if (thread.isAlive) log.error(s"failed to stop timing wheel $name")
+  }
+}
@@ -0,0 +1,158 @@
+package aug.gui
+
+import aug.gui.text.{PartialLine, ScrollbackSpill, Text}
+import aug.io.{ColorCode, DefaultColorCode, TelnetColorRed}
+import aug.profile.{ProfileConfig, WindowConfig}
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TextTest extends AnyFlatSpec {
+
+  private def config(scrollbackLines: Int) = ProfileConfig("test",
+    consoleWindow = WindowConfig(scrollbackLines = scrollbackLines))
+
+  "text" should "keep colors and commands" in {
+    val text = new Text(config(100))
+    text.setLine(1, "plain \u001b[31mred\u001b[0m plain")
+    text.addCommand(1, "look")
+    text.setLine(1, "\u001b[31mred\u001b[31m again")
+
+    val line = text(1)
+    assert(line.fragments.size == 1)
+    assert(line.fragments.head.text == "red again")
+    assert(line.fragments.head.colorCode == ColorCode(TelnetColorRed))
+    assert(line.commands == List("look"))
+  }
+
+  "text" should "drop lines older than the scrollback" in {
+    val text = new Text(config(100))
+    for (i <- 1 to 250) text.addLine(s"line $i")
+
+    assert(text.length == 250)
+    assert(text.firstLine == 151)
+    assert(text.get(150).isEmpty)
+    assert(text(151).str == "line 151")
+    assert(text.getWrapLines(2, 80, -1).map(_.str) == List("line 249", "line 250"))
+
+    text.setLine(10, "too old")
+    assert(text.get(10).isEmpty)
+  }
+
+  "text" should "keep the newest lines when the scrollback shrinks" in {
+    val text = new Text(config(1000))
+    for (i <- 1 to 500) text.addLine(s"line $i")
+
+    text.profileConfig = config(100)
+    assert(text.firstLine == 401)
+    assert(text(401).str == "line 401")
+    assert(text(500).str == "line 500")
+  }
+
+  "text" should "page evicted lines back from the spill file" in {
+    val file = java.io.File.createTempFile("scrollback", ".spill")
+    val text = new Text(config(100))
+    text.spillTo(file)
+
+    for (i <- 1 to 10000) text.addLine(s"\u001b[31mline\u001b[0m $i")
+    text.addCommand(5000, "never stored")
+
+    assert(text.firstLine == 0)
+    assert(text(1).str == "line 1")
+    assert(text(1).fragments.head.colorCode == ColorCode(TelnetColorRed))
+    assert(text(9900).str == "line 9900")
+    assert(text.getWrapLines(2, 80, 5000).map(_.str) == List("line 4999", "line 5000"))
+
+    text.closeSpill()
+    assert(!file.exists)
+    assert(text.get(1).isEmpty)
+  }
+
+  it should "read a partial line through until it ends" in {
+    val text = new Text(config(100))
+    val partial = new PartialLine
+
+    text.addLine("before")
+    "\u001b[31mdrip\u001b[0m fed".grouped(2).foreach(text.appendPartial(2, partial, _))
+    text.addCommand(2, "cmd")
+
+    assert(text.length == 2)
+    assert(text(2).str == "drip fedcmd")
+    assert(text(2).commands == List("cmd"))
+
+    text.endPartial()
+    partial.clear()
+    assert(text(2).str == "drip fedcmd")
+    assert(text(2).fragments.head.colorCode == ColorCode(TelnetColorRed))
+    assert(text(2).commands == List("cmd"))
+  }
+
+  "stale spill files" should "be swept unless a console is spilling to them" in {
+    val dir = java.nio.file.Files.createTempDirectory("spills").toFile
+    val orphan = java.io.File.createTempFile("scrollback", ".spill", dir)
+    val other = new java.io.File(dir, "profileConfig.xml")
+    other.createNewFile()
+    val text = new Text(config(100))
+    val live = java.io.File.createTempFile("scrollback", ".spill", dir)
+    text.spillTo(live)
+
+    ScrollbackSpill.sweep(dir)
+    assert(!orphan.exists)
+    assert(live.exists)
+    assert(other.exists)
+
+    text.closeSpill()
+  }
+
+  it should "keep spilling after the profile thread is interrupted" in {
+    val file = java.io.File.createTempFile("scrollback", ".spill")
+    val text = new Text(config(100))
+    text.spillTo(file)
+
+    for (i <- 1 to 5000) text.addLine(s"line $i")
+    Thread.currentThread.interrupt()
+    for (i <- 5001 to 10000) text.addLine(s"line $i")
+
+    assert(Thread.interrupted())
+    assert(text(1).str == "line 1")
+    assert(text(9000).str == "line 9000")
+    text.closeSpill()
+  }
+
+  "text" should "only rewrap lines that changed" in {
+    val text = new Text(config(100))
+    for (i <- 1 to 10) text.addLine(s"line $i " * 4)
+
+    val first = text.getWrapLines(20, 20, -1)
+    val second = text.getWrapLines(20, 20, -1)
+    assert(first.zip(second).forall { case (a, b) => a eq b })
+
+    text.addCommand(10, "kill rat")
+    val third = text.getWrapLines(20, 20, -1)
+    assert(third.last.str.endsWith("kill rat"))
+    assert(third.head eq second.head)
+
+    val narrow = text.getWrapLines(20, 10, -1)
+    assert(narrow.forall(_.length <= 10))
+  }
+
+  "a color code" should "survive packing" in {
+    val code = ColorCode(TelnetColorRed, DefaultColorCode.bg, bold = true)
+    assert(ColorCode.unpack(ColorCode.pack(code)) == code)
+    assert(ColorCode.unpack(ColorCode.pack(DefaultColorCode)) == DefaultColorCode)
+  }
+
+  "a partial line" should "parse the same in pieces as in one go" in {
+    val txt = "\u001b[1;32mHP:\u001b[0m 100 \u001b[31mSP: 50\u001b[0m >"
+    val partial = new PartialLine
+    txt.grouped(3).foreach(partial.append)
+
+    val whole = new Text(config(100)).parse(1, txt).toLine
+    assert(partial.text == txt)
+    assert(partial.plainText == "HP: 100 SP: 50 >")
+    assert(partial.packed(1).toLine == whole)
+
+    partial.clear()
+    assert(partial.isEmpty)
+    partial.append("\u001b[31mred")
+    assert(partial.packed(2).toLine.fragments.head.colorCode.fg == TelnetColorRed)
+  }
+}
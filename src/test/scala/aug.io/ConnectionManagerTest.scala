@@ -0,0 +1,60 @@
+package aug.io
+
+import java.net.{InetSocketAddress, ServerSocket}
+import java.nio.ByteBuffer
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class ConnectionManagerTest extends AnyFlatSpec {
+
+  private class TestConnection(address: InetSocketAddress, received: CountDownLatch)
+    extends AbstractConnection(address) {
+    override protected def handleIncoming(buffer: ByteBuffer): Unit = {
+      buffer.position(buffer.limit())
+      received.countDown()
+    }
+
+    override def error(msg: String): Unit = {}
+  }
+
+  "connections" should "be spread evenly across shards" in {
+    val server = new ServerSocket(0)
+    val count = ConnectionManager.shards.size * 2 + 1
+    val received = new CountDownLatch(count)
+
+    val acceptor = new Thread(() => {
+      (0 until count).map(_ => server.accept()).foreach(_.getOutputStream.write("hello".getBytes))
+    })
+    acceptor.start()
+
+    // shared by every suite in the JVM, so never closed here and other suites' connections may be on the shards
+    ConnectionManager.start()
+    val loadsBefore = ConnectionManager.shards.map(_.getConnections)
+    val bytesBefore = ConnectionManager.shards.map(_.getBytesRead).sum
+
+    val connections = (0 until count).map { _ =>
+      val c = new TestConnection(new InetSocketAddress("localhost", server.getLocalPort), received)
+      c.connect()
+      c
+    }
+
+    try {
+      assert(received.await(5, TimeUnit.SECONDS))
+      val loads = ConnectionManager.shards.map(_.getConnections)
+      assert(loads.sum == loadsBefore.sum + count)
+      assert(loads.max - loads.min <= Math.max(1, loadsBefore.max - loadsBefore.min))
+
+      // a shard counts the bytes only after the connection has handled them
+      def bytesRead = ConnectionManager.shards.map(_.getBytesRead).sum
+      val deadline = System.currentTimeMillis + 5000
+      while (bytesRead < bytesBefore + count * 5 && System.currentTimeMillis < deadline) Thread.sleep(10)
+      assert(bytesRead == bytesBefore + count * 5)
+
+      connections.foreach(_.close())
+      assert(ConnectionManager.shards.map(_.getConnections).sum == loadsBefore.sum)
+    } finally {
+      server.close()
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package aug.io
+
+import java.nio.charset.StandardCharsets
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class GmcpTest extends AnyFlatSpec {
+
+  private def message(s: String) = {
+    val bytes = (s + "trailing garbage").getBytes(StandardCharsets.UTF_8)
+    Gmcp.parse(bytes, s.getBytes(StandardCharsets.UTF_8).length)
+  }
+
+  "gmcp" should "split package name from data" in {
+    val vitals = message("""char.vitals { "hp": 100, "name": "Zoë" }""")
+    assert(vitals.packageName == "char.vitals")
+    assert(vitals.getData == """{ "hp": 100, "name": "Zoë" }""")
+    assert(vitals.toString == """char.vitals { "hp": 100, "name": "Zoë" }""")
+
+    val bare = message("core.goodbye")
+    assert(bare.packageName == "core.goodbye")
+    assert(bare.getData == "")
+  }
+
+  "gmcp" should "only pass on subscribed packages but cache everything" in {
+    val gmcp = new Gmcp
+    assert(gmcp.update(message("room.info {}")))
+
+    gmcp.subscribe("Char")
+    assert(gmcp.update(message("char.vitals {\"hp\": 1}")))
+    assert(gmcp.update(message("char {}")))
+    assert(!gmcp.update(message("character.x {}")))
+    assert(!gmcp.update(message("room.info {\"num\": 2}")))
+
+    assert(gmcp.get("ROOM.INFO").map(_.getData).contains("{\"num\": 2}"))
+    assert(gmcp.get("comm.channel").isEmpty)
+
+    gmcp.unsubscribe("char")
+    assert(gmcp.update(message("room.info {}")))
+  }
+
+  "gmcp" should "treat a prefix with a trailing dot like the bare package" in {
+    val gmcp = new Gmcp
+    gmcp.subscribe("Char.")
+    assert(gmcp.update(message("Char.Vitals {}")))
+    assert(gmcp.update(message("char {}")))
+    assert(!gmcp.update(message("charx {}")))
+    assert(!gmcp.update(message("comm.channel {}")))
+
+    gmcp.unsubscribe("char")
+    assert(gmcp.update(message("comm.channel {}")))
+  }
+}
@@ -0,0 +1,56 @@
+package aug.io
+
+import java.io.{ByteArrayOutputStream, File}
+import java.net.Socket
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class SessionRecordingTest extends AnyFlatSpec {
+
+  private def recording(chunks: Seq[Array[Byte]]): File = {
+    val file = File.createTempFile("session", ".rec")
+    file.deleteOnExit()
+
+    val recorder = new SessionRecorder(file)
+    chunks.zipWithIndex.foreach { case (chunk, i) =>
+      val buffer = if (i % 2 == 0) ByteBuffer.wrap(chunk) else ByteBuffer.allocateDirect(chunk.length).put(chunk).flip()
+      recorder.record(buffer)
+      assert(buffer.remaining == chunk.length)
+    }
+    recorder.close()
+    file
+  }
+
+  private val chunks = Seq("hello\n".getBytes, Array[Byte](-1, -6, 86, -1, -16), Array.fill[Byte](70000)(65))
+
+  "a recording" should "read back the chunks it recorded" in {
+    val reader = new SessionReader(recording(chunks))
+    val read = reader.toList
+    reader.close()
+
+    assert(read.map(_.data.toSeq) == chunks.map(_.toSeq))
+    assert(read.forall(_.nanos >= 0))
+  }
+
+  "a replay server" should "serve the recording to a connection" in {
+    val server = new ReplayServer(recording(chunks), realTime = false)
+    // shared by every suite in the JVM, so it's never closed here
+    ConnectionManager.start()
+    ConnectionManager.register(server)
+
+    try {
+      val socket = new Socket("localhost", server.port)
+      val received = new ByteArrayOutputStream()
+      socket.getInputStream.transferTo(received)
+      socket.close()
+
+      assert(server.awaitServed(5, TimeUnit.SECONDS))
+      assert(received.toByteArray.toSeq == chunks.flatten)
+      assert(server.bytesServed == chunks.map(_.length).sum)
+    } finally {
+      server.close()
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package aug.io
+
+import java.nio.ByteBuffer
+import java.util.zip.Deflater
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TelnetDecoderTest extends AnyFlatSpec {
+
+  private class RecordingHandler extends TelnetHandler {
+    val events = new StringBuilder
+
+    override def onText(text: ByteBuffer): Unit = while (text.hasRemaining) events += (text.get & 0xFF).toChar
+    override def onGoAhead(): Unit = events ++= "<GA>"
+    override def onNegotiation(command: Byte, option: Byte): Unit = events ++= s"<${command & 0xFF} ${option & 0xFF}>"
+    override def onSubNegotiation(option: Byte, payload: Array[Byte], length: Int): Unit = {
+      events ++= s"<SB ${option & 0xFF} ${new String(payload, 0, length, "ISO-8859-1")}>"
+    }
+    override def onUnknownCommand(command: Byte): Unit = events ++= s"<? ${command & 0xFF}>"
+  }
+
+  private def bytes(ints: Int*): Array[Byte] = ints.map(_.toByte).toArray
+
+  private def decode(packets: Array[Byte]*): String = {
+    val handler = new RecordingHandler
+    val decoder = new TelnetDecoder(handler)
+    packets.foreach(p => decoder.decode(ByteBuffer.wrap(p)))
+    handler.events.result()
+  }
+
+  private val stream = "hi\r\n".getBytes ++ bytes(255, 251, 201) ++ "a".getBytes ++ bytes(255, 255) ++
+    "> ".getBytes ++ bytes(255, 249) ++ bytes(255, 250, 201) ++ "core.ping".getBytes ++ bytes(255, 240)
+
+  private val expected = "hi\n<251 201>aÿ> <GA><SB 201 core.ping>"
+
+  "a decoder" should "decode text, negotiation and subnegotiation" in {
+    assert(decode(stream) == expected)
+  }
+
+  "a decoder" should "decode the same events when every byte is a packet" in {
+    assert(decode(stream.map(b => Array(b)).toIndexedSeq: _*) == expected)
+  }
+
+  "a decoder" should "inflate after MCCP starts and stop when the stream finishes" in {
+    val deflater = new Deflater()
+    deflater.setInput(stream)
+    deflater.finish()
+    val zipped = new Array[Byte](1024)
+    val length = deflater.deflate(zipped)
+
+    val all = bytes(255, 250, 86, 255, 240) ++ zipped.take(length) ++ "plain".getBytes
+
+    assert(decode(all) == "<SB 86 >" + expected + "plain")
+    assert(decode(all.grouped(3).toIndexedSeq: _*) == "<SB 86 >" + expected + "plain")
+  }
+
+  "a decoder" should "decode plain text in order when it arrives with only the compression trailer" in {
+    val deflater = new Deflater()
+    deflater.setInput(stream)
+    deflater.finish()
+    val zipped = new Array[Byte](1024)
+    val length = deflater.deflate(zipped)
+
+    // the last four bytes are the adler32 trailer, everything before it inflates to the whole stream
+    val start = bytes(255, 250, 86, 255, 240) ++ zipped.take(length - 4)
+    val trailer = zipped.slice(length - 4, length) ++ "plain".getBytes
+
+    assert(decode(start, trailer, "more".getBytes) == "<SB 86 >" + expected + "plainmore")
+  }
+}
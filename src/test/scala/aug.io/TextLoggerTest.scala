@@ -0,0 +1,54 @@
+package aug.io
+
+import java.io.{File, FileInputStream}
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.zip.GZIPInputStream
+
+import aug.profile.LogConfig
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TextLoggerTest extends AnyFlatSpec {
+
+  private def tempDir(): File = Files.createTempDirectory("textlogger").toFile
+
+  private def read(file: File): String = {
+    val in = if (file.getName.endsWith(".gz")) {
+      new GZIPInputStream(new FileInputStream(file))
+    } else new FileInputStream(file)
+    try new String(in.readAllBytes(), StandardCharsets.UTF_8) finally in.close()
+  }
+
+  "a colorless logger" should "strip colors" in {
+    val dir = tempDir()
+    val logger = new ColorlessTextLogger(dir)
+    logger.addText("plain \u001b[31mred\u001b[0m plain\n")
+    logger.addText("\u001b[1;3")
+    logger.addText("2mgreen\n")
+    logger.close()
+
+    val files = dir.listFiles()
+    assert(files.length == 1)
+    assert(files.head.getName.startsWith("textLog."))
+    assert(read(files.head) == "plain red plain\ngreen\n")
+  }
+
+  "a logger" should "rotate by size and compress closed files" in {
+    val dir = tempDir()
+    val logger = new TextLogger(dir, LogConfig(maxSizeMb = 1, compress = true))
+    val line = "x" * 1023 + "\n"
+    for (_ <- 0 until 1536) logger.addText(line)
+    logger.close()
+
+    var tries = 0
+    while (dir.listFiles().exists(!_.getName.endsWith(".gz")) && tries < 100) {
+      Thread.sleep(50)
+      tries += 1
+    }
+
+    val files = dir.listFiles().sortBy(_.getName)
+    assert(files.length == 2)
+    assert(files.forall(_.getName.endsWith(".log.gz")))
+    assert(files.map(read).mkString == line * 1536)
+  }
+}
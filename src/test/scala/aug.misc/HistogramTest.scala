@@ -0,0 +1,32 @@
+package aug.misc
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class HistogramTest extends AnyFlatSpec {
+
+  "a histogram" should "report percentiles within its bucket precision" in {
+    val histogram = new Histogram
+    (1 to 10000).foreach(i => histogram.record(i))
+
+    assert(histogram.count == 10000)
+    assert(Math.abs(histogram.mean - 5000.5) < 0.001)
+    assert(histogram.maxValue == 10000)
+
+    def near(actual: Long, expected: Long) = Math.abs(actual - expected) <= expected * 0.04
+    assert(near(histogram.percentile(50), 5000))
+    assert(near(histogram.percentile(99), 9900))
+    assert(histogram.percentile(0) == 1)
+
+    histogram.reset()
+    assert(histogram.count == 0)
+    assert(histogram.percentile(99) == 0)
+  }
+
+  "a histogram" should "keep small values exact" in {
+    val histogram = new Histogram
+    Seq(0L, 3L, 31L, 32L, 33L).foreach(histogram.record)
+    assert(histogram.percentile(20) == 0)
+    assert(histogram.percentile(60) == 31)
+    assert(histogram.percentile(100) == 33)
+  }
+}
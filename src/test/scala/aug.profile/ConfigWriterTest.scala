@@ -0,0 +1,56 @@
+package aug.profile
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class ConfigWriterTest extends AnyFlatSpec {
+
+  private def read(file: File): String = new String(Files.readAllBytes(file.toPath), StandardCharsets.UTF_8)
+
+  "a config writer" should "merge saves within the debounce into one write of the latest" in {
+    val dir = Files.createTempDirectory("configwriter").toFile
+    val file = new File(dir, "config.xml")
+    val writes = new AtomicInteger
+    val writer = new ConfigWriter(200)
+
+    (1 to 10).foreach { n =>
+      writer.save(file) { out =>
+        writes.incrementAndGet()
+        out.write(s"config $n".getBytes(StandardCharsets.UTF_8))
+      }
+    }
+
+    assert(!file.exists)
+    Thread.sleep(1000)
+
+    assert(writes.get == 1)
+    assert(read(file) == "config 10")
+    assert(dir.listFiles.map(_.getName).toList == List("config.xml"))
+    writer.close()
+  }
+
+  it should "write pending saves on flush and keep the old file when a write fails" in {
+    val dir = Files.createTempDirectory("configwriter").toFile
+    val file = new File(dir, "config.xml")
+    val writer = new ConfigWriter(60000)
+
+    writer.save(file)(_.write("old".getBytes(StandardCharsets.UTF_8)))
+    writer.flush()
+    assert(read(file) == "old")
+
+    writer.save(file) { out =>
+      out.write("half".getBytes(StandardCharsets.UTF_8))
+      throw new Exception("failed midway")
+    }
+    writer.flush()
+
+    assert(writer.pendingSaves == 0)
+    assert(read(file) == "old")
+    assert(dir.listFiles.map(_.getName).toList == List("config.xml"))
+    writer.close()
+  }
+}
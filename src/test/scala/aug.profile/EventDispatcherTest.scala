@@ -0,0 +1,42 @@
+package aug.profile
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class EventDispatcherTest extends AnyFlatSpec {
+
+  private case class Event(lane: Int, n: Int)
+
+  "a dispatcher" should "take by lane and keep order within a lane" in {
+    val dispatcher = new EventDispatcher[Event](3, _.lane)
+    Seq(Event(2, 1), Event(1, 1), Event(2, 2), Event(0, 1), Event(1, 2)).foreach(dispatcher.offer)
+
+    assert(dispatcher.depth(2) == 2)
+    assert(dispatcher.size == 5)
+    assert((1 to 5).map(_ => dispatcher.take()) ==
+      Seq(Event(0, 1), Event(1, 1), Event(1, 2), Event(2, 1), Event(2, 2)))
+    assert(dispatcher.size == 0)
+  }
+
+  "a dispatcher" should "wake the consumer for events from many producers" in {
+    val dispatcher = new EventDispatcher[Event](2, _.lane)
+    val producers = 4
+    val perProducer = 10000
+    val ready = new CountDownLatch(1)
+
+    val threads = (0 until producers).map { p =>
+      new Thread(() => {
+        ready.await()
+        (0 until perProducer).foreach(i => dispatcher.offer(Event(i % 2, p * perProducer + i)))
+      })
+    }
+    threads.foreach(_.start())
+    ready.countDown()
+
+    val seen = (0 until producers * perProducer).map(_ => dispatcher.take().n).toSet
+    threads.foreach(_.join(TimeUnit.SECONDS.toMillis(5)))
+    assert(seen.size == producers * perProducer)
+    assert(dispatcher.size == 0)
+  }
+}
@@ -0,0 +1,62 @@
+package aug.profile
+
+import java.io.{BufferedReader, InputStreamReader}
+import java.net.ServerSocket
+
+import aug.io.{ConnectionManager, HeadlessSystemLog}
+import org.scalatest.flatspec.AnyFlatSpec
+
+class HeadlessProfileTest extends AnyFlatSpec {
+
+  private def connections: Int = ConnectionManager.shards.map(_.getConnections).sum
+
+  "a headless profile" should "turn server text into console lines without a UI" in {
+    val profile = new HeadlessProfile(ProfileConfig("headless"), new HeadlessSystemLog)
+
+    try {
+      profile.offer(TelnetRecv("hello\nworld\npartial", ga = false))
+
+      val deadline = System.currentTimeMillis + 5000
+      while (!profile.console.getLine(2).isPresent && System.currentTimeMillis < deadline) Thread.sleep(10)
+
+      assert(profile.console.getLine(1).get.withoutColors == "hello")
+      assert(profile.console.getLine(2).get.withoutColors == "world")
+      assert(profile.createTextWindow("side").getFonts.isEmpty)
+    } finally profile.close()
+  }
+
+  "a headless profile" should "pace commands and flush the rest on request" in {
+    val server = new ServerSocket(0)
+    val config = ProfileConfig("paced", telnetConfig = TelnetConfig(host = "localhost", port = server.getLocalPort,
+      paceCommands = 2, paceMillis = 60000))
+
+    // shared by every suite in the JVM, so it's never closed here, only this profile's connection is
+    ConnectionManager.start()
+    val connectionsBefore = connections
+    val profile = new HeadlessProfile(config, new HeadlessSystemLog)
+
+    try {
+      profile.connect()
+      val socket = server.accept()
+      socket.setSoTimeout(5000)
+      val in = new BufferedReader(new InputStreamReader(socket.getInputStream))
+
+      profile.offer(SendData("n\ne\ns\nw"))
+      assert(in.readLine() == "n")
+      assert(in.readLine() == "e")
+      assert(!in.ready())
+
+      profile.flushSendQueue()
+      assert(in.readLine() == "s")
+      assert(in.readLine() == "w")
+      socket.close()
+    } finally {
+      profile.close()
+      server.close()
+    }
+
+    val deadline = System.currentTimeMillis + 5000
+    while (connections > connectionsBefore && System.currentTimeMillis < deadline) Thread.sleep(10)
+    assert(connections == connectionsBefore)
+  }
+}
@@ -0,0 +1,55 @@
+package aug.script
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+import scala.jdk.CollectionConverters._
+
+class TimingWheelTest extends AnyFlatSpec {
+
+  "a timing wheel" should "fire timeouts in order, not early, and skip cancelled ones" in {
+    val fired = new ConcurrentLinkedQueue[(Int, Long)]()
+    val done = new CountDownLatch(3)
+    val start = System.nanoTime
+
+    val wheel = new TimingWheel[Int]("test", tickMillis = 5, wheelSize = 8)({ due =>
+      due.foreach { i =>
+        fired.add(i -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime - start))
+        done.countDown()
+      }
+    })
+
+    try {
+      wheel.schedule(120, 3)  // more than two rotations away
+      wheel.schedule(10, 1)
+      val cancelled = wheel.schedule(20, 99)
+      wheel.schedule(30, 2)
+      assert(wheel.size == 4)
+
+      assert(cancelled.cancel())
+      assert(!cancelled.cancel())
+
+      assert(done.await(2, TimeUnit.SECONDS))
+      val result = fired.asScala.toList
+      assert(result.map(_._1) == List(1, 2, 3))
+      assert(result.last._2 >= 120)
+      assert(wheel.size == 0)
+    } finally wheel.close()
+  }
+
+  it should "stop ticking while idle and wake for new timeouts" in {
+    val done = new CountDownLatch(1)
+    val wheel = new TimingWheel[Int]("idle test", tickMillis = 5)(_ => done.countDown())
+
+    try {
+      def ticker = Thread.getAllStackTraces.keySet.asScala.find(_.getName == "TimingWheel: idle test").get
+
+      Thread.sleep(50)
+      assert(ticker.getState == Thread.State.WAITING)
+
+      wheel.schedule(10, 1)
+      assert(done.await(1, TimeUnit.SECONDS))
+    } finally wheel.close()
+  }
+}